@@ -0,0 +1,124 @@
+package org.example;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.charset.StandardCharsets;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Per-frame cost of the codec hot paths. Run with {@code -prof gc} to get the
+ * allocation rate next to ns/op.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class CodecBenchmark {
+    private static final int DATA_LENGTH = FrameEncoder.DEFAULT_DATA_LENGTH;
+
+    @Param({"text", "flags"})
+    public String payload;
+
+    private final FrameEncoder encoder = new FrameEncoder(DATA_LENGTH);
+    private byte[] data;
+    private byte[] packet;
+    private byte[] frame;
+    private final FrameDecoder decoder = new FrameDecoder(DATA_LENGTH);
+    private long received;
+    private final FrameDecoder.Handler sink = (destination, source, buffer, offset, length, fcs) -> received += length;
+
+    @Setup
+    public void setup() {
+        String text = "flags".equals(payload) ? "@h@h@h@h" : "Lorem ip";
+        data = text.getBytes(StandardCharsets.US_ASCII);
+        packet = encoder.encode(data, 0, data.length, 0, 3);
+        frame = new byte[encoder.getFrameLength()];
+    }
+
+    /**
+     * Received data with a number of bits flipped after the FCS was taken, and that FCS.
+     */
+    @State(Scope.Thread)
+    public static class Damaged {
+        @Param({"0", "1", "2"})
+        public int flippedBits;
+
+        byte[] data;
+        byte fcs;
+        byte[] scratch;
+
+        @Setup
+        public void setup(CodecBenchmark benchmark) {
+            data = benchmark.data.clone();
+            fcs = Fcs.calculate(data);
+            Random random = new Random(42);
+            for (int i = 0; i < flippedBits; i++) {
+                int bit = random.nextInt(data.length * 8);
+                data[bit / 8] ^= (byte) (0x80 >>> (bit % 8));
+            }
+            scratch = new byte[data.length];
+        }
+    }
+
+    @Benchmark
+    public byte[] createPacket() {
+        return encoder.encode(data, 0, data.length, 0, 3);
+    }
+
+    /**
+     * Steady-state send path; expected to show 0 B/op under {@code -prof gc}.
+     */
+    @Benchmark
+    public int encodeInto() {
+        return encoder.encodeInto(frame, 0, data, 0, data.length, 0, 3);
+    }
+
+    /**
+     * Steady-state receive path; expected to show 0 B/op under {@code -prof gc}.
+     */
+    @Benchmark
+    public long decodeFrame() {
+        decoder.feed(packet, 0, packet.length, sink);
+        return received;
+    }
+
+    @Benchmark
+    public byte[] applyByteStuffingToData() {
+        return FrameEncoder.stuff(data);
+    }
+
+    @Benchmark
+    public byte[] byteDestuffing() {
+        return FrameEncoder.destuff(packet);
+    }
+
+    @Benchmark
+    public byte calculateFCS(Damaged damaged) {
+        return Fcs.calculate(damaged.data);
+    }
+
+    @Benchmark
+    public byte[] syndromeCorrection(Damaged damaged) {
+        System.arraycopy(damaged.data, 0, damaged.scratch, 0, damaged.data.length);
+        Fcs.correct(damaged.scratch, 0, damaged.scratch.length, damaged.fcs);
+        return damaged.scratch;
+    }
+
+    @Benchmark
+    public String packetToString() {
+        return FrameEncoder.describe(packet);
+    }
+}
@@ -0,0 +1,129 @@
+package org.example;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+
+/**
+ * Selective-repeat ARQ wire format shared by {@link ArqSender} and {@link ArqReceiver}.
+ * The first data byte of every frame is a control byte, type in the top two bits and a
+ * 6-bit sequence number below, and the last two are a CRC-16 of the rest:
+ *
+ * <pre>
+ * DATA seq, data..., check               sender to receiver
+ * ACK  next expected seq, bitmap..., check  receiver to sender; bit i of the bitmap (MSB
+ *                                        first) acknowledges next expected + 1 + i
+ * NAK  seq, check                        receiver to sender, asks for seq again
+ * </pre>
+ *
+ * The check is there because the link's 6-bit FCS lets about one damaged frame in 64
+ * through, and a single one of those in the sequence numbers throws the two ends out of
+ * step.
+ *
+ * ACK and NAK frames go back over the receiving port, so both ends must run ARQ with
+ * the same frame format and window.
+ */
+final class Arq {
+    static final int DATA = 0;
+    static final int ACK = 1;
+    static final int NAK = 2;
+    static final int SEQ_SPACE = 64;
+    static final int SEQ_MASK = SEQ_SPACE - 1;
+    static final int MAX_WINDOW = SEQ_SPACE / 2; // Selective repeat cannot tell old from new beyond this
+    static final int CHECK_LENGTH = 2;
+    private static final int CRC_POLYNOMIAL = 0x1021; // CRC-16/CCITT: x^16 + x^12 + x^5 + 1
+    private static final int[] CRC_TABLE = new int[256];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = (crc & 0x8000) != 0 ? (crc << 1) ^ CRC_POLYNOMIAL : crc << 1;
+            }
+            CRC_TABLE[i] = crc & 0xFFFF;
+        }
+    }
+
+    static final ScheduledExecutorService TIMERS = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "arq-timers");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    static final SenderSession.Listener QUIET = new SenderSession.Listener() {
+        @Override
+        public void onPacket(int packetNumber, byte[] buffer, int offset, int length) {
+        }
+
+        @Override
+        public void onCollision(int packetNumber) {
+        }
+
+        @Override
+        public void onFailed(int packetNumber) {
+        }
+    };
+
+    private Arq() {
+    }
+
+    static byte control(int type, int seq) {
+        return (byte) ((type << 6) | (seq & SEQ_MASK));
+    }
+
+    static int type(byte control) {
+        return (control & 0xFF) >>> 6;
+    }
+
+    static int seq(byte control) {
+        return control & SEQ_MASK;
+    }
+
+    /**
+     * Writes the check after the first {@code length} bytes of the frame.
+     *
+     * @return the length of the frame with its check
+     */
+    static int seal(byte[] frame, int length) {
+        int crc = crc16(frame, 0, length);
+        frame[length] = (byte) (crc >>> 8);
+        frame[length + 1] = (byte) crc;
+        return length + CHECK_LENGTH;
+    }
+
+    /**
+     * @return the length of the frame without its check, or -1 if the check does not match
+     */
+    static int unseal(byte[] buffer, int offset, int length) {
+        int content = length - CHECK_LENGTH;
+        if (content < 1) {
+            return -1;
+        }
+        int crc = crc16(buffer, offset, content);
+        return buffer[offset + content] == (byte) (crc >>> 8) && buffer[offset + content + 1] == (byte) crc ? content : -1;
+    }
+
+    private static int crc16(byte[] data, int offset, int length) {
+        int crc = 0xFFFF;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            crc = ((crc << 8) ^ CRC_TABLE[((crc >>> 8) ^ data[i]) & 0xFF]) & 0xFFFF;
+        }
+        return crc;
+    }
+
+    // How far seq is ahead of from, modulo the sequence space
+    static int distance(int from, int seq) {
+        return (seq - from) & SEQ_MASK;
+    }
+
+    /**
+     * The window both ends use: the requested one, capped by the sequence space and by
+     * how many frames an ACK bitmap in one frame can cover.
+     */
+    static int window(FrameFormat format, int requested) {
+        if (format.getDataCapacity() < 2 + CHECK_LENGTH) {
+            throw new IllegalArgumentException("Frames too small for ARQ: " + format);
+        }
+        int bitmapBits = 8 * (format.getDataCapacity() - 1 - CHECK_LENGTH);
+        return Math.max(1, Math.min(requested, Math.min(MAX_WINDOW, bitmapBits + 1)));
+    }
+}
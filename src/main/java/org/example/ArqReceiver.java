@@ -0,0 +1,203 @@
+package org.example;
+
+import java.util.Arrays;
+
+/**
+ * Receiving end of selective-repeat ARQ. Frames that fail their FCS are dropped; the
+ * rest are acknowledged, held back until the gap before them is filled and then handed
+ * over in order, each exactly once. A gap is reported with a NAK as soon as a later
+ * frame shows it. ACKs and NAKs are written back through the same transport, built so
+ * the framing cannot garble them, see {@link FrameEncoder#isAmbiguous}.
+ * Compressed data is inflated only once it is in order. A journal gets the data as it is
+ * handed over, in order and without duplicates, marked when it was inflated; whether a
+ * frame was corrected on the way is not known by then.
+ */
+public final class ArqReceiver {
+    private final ReceiverSession session;
+    private final SenderSession replies;
+    private final FrameDecoder.Handler handler;
+    private final FrameDecoder.Handler consumer;
+    private volatile ReceiveJournal journal;
+    private final LinkMetrics metrics = LinkMetrics.global();
+    private final FrameEncoder encoder; // Only to check replies
+    private final int source;
+    private final int capacity;
+    private final int window;
+    private final int ackLength;
+    // Everything below is guarded by this: the reader thread, and the send thread for ACKs
+    private final byte[][] held;
+    private final int[] heldLength;
+    private final int[] heldDestination;
+    private final int[] heldSource;
+    private final boolean[] present = new boolean[Arq.SEQ_SPACE];
+    private final boolean[] nakSent = new boolean[Arq.SEQ_SPACE];
+    private int handedOverFlags; // Journal flags of what the decompressor hands over next
+    private int expected;
+    private boolean ackQueued; // An ACK is waiting for the channel
+    private boolean ackOwed; // Frames arrived since that ACK was built
+
+    /**
+     * @param handler gets the data of each frame, in order, on the reader thread
+     */
+    public ArqReceiver(Transport transport, FrameFormat format, int window, FrameDecoder.Handler handler) {
+        this.window = Arq.window(format, window);
+        this.ackLength = Math.min(format.getDataCapacity() - Arq.CHECK_LENGTH, 1 + (this.window - 1 + 7) / 8);
+        this.consumer = handler;
+        this.handler = new Decompressor(this::deliver);
+        this.held = new byte[Arq.SEQ_SPACE][format.getDataCapacity()];
+        this.heldLength = new int[Arq.SEQ_SPACE];
+        this.heldDestination = new int[Arq.SEQ_SPACE];
+        this.heldSource = new int[Arq.SEQ_SPACE];
+        this.encoder = new FrameEncoder(format);
+        this.source = LinkPorts.portNumber(transport.getName());
+        this.capacity = format.getDataCapacity();
+        this.replies = new SenderSession(transport, format);
+        this.session = new ReceiverSession(transport, format, this::onFrame);
+        this.session.setDiscardCorrupt(true);
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * Replaces the channels drawn from the settings, for the frames received and for the
+     * replies sent; call before {@link #start}.
+     */
+    public void setChannels(ChannelModel received, ChannelModel replies) {
+        session.setChannel(received);
+        this.replies.setChannel(replies);
+    }
+
+    /**
+     * Appends the data handed over to the journal; null to stop.
+     */
+    public void setJournal(ReceiveJournal journal) {
+        this.journal = journal;
+    }
+
+    public void start() {
+        session.start();
+    }
+
+    public void stop() {
+        session.stop();
+    }
+
+    private synchronized void onFrame(int destination, int source, byte[] buffer, int offset, int length, byte fcs) {
+        length = Arq.unseal(buffer, offset, length);
+        if (length < 0) {
+            metrics.fcsFailure(); // Damaged, and the FCS missed it
+            return;
+        }
+        if (Arq.type(buffer[offset]) != Arq.DATA) {
+            return; // Our own ACKs echoed by a pty, or noise
+        }
+        int seq = Arq.seq(buffer[offset]);
+        int distance = Arq.distance(expected, seq);
+        if (distance >= window) {
+            metrics.arqDuplicate(); // Already delivered, the ACK must have been lost
+        } else if (distance == 0) {
+            handOver(destination, source, buffer, offset + 1, length - 1, fcs);
+            advance();
+            deliverHeld(fcs);
+        } else if (present[seq]) {
+            metrics.arqDuplicate();
+        } else {
+            System.arraycopy(buffer, offset + 1, held[seq], 0, length - 1);
+            heldLength[seq] = length - 1;
+            heldDestination[seq] = destination;
+            heldSource[seq] = source;
+            present[seq] = true;
+            for (int missing = expected; missing != seq; missing = (missing + 1) & Arq.SEQ_MASK) {
+                if (!present[missing] && !nakSent[missing]) {
+                    nakSent[missing] = true;
+                    byte[] nak = {Arq.control(Arq.NAK, missing)};
+                    reply(unambiguous(nak));
+                }
+            }
+        }
+        acknowledge();
+    }
+
+    private void deliver(int destination, int source, byte[] buffer, int offset, int length, byte fcs) {
+        ReceiveJournal current = journal;
+        if (current != null) {
+            current.append(destination & FrameFormat.ADDRESS_MASK, source, handedOverFlags, buffer, offset, length);
+        }
+        consumer.onFrame(destination, source, buffer, offset, length, fcs);
+    }
+
+    private void deliverHeld(byte fcs) {
+        while (present[expected]) {
+            int seq = expected;
+            present[seq] = false;
+            handOver(heldDestination[seq], heldSource[seq], held[seq], 0, heldLength[seq], fcs);
+            advance();
+        }
+    }
+
+    // Through the decompressor, which drops the mark before the data gets to deliver
+    private void handOver(int destination, int source, byte[] buffer, int offset, int length, byte fcs) {
+        handedOverFlags = (destination & FrameFormat.COMPRESSED_FLAG) != 0 ? ReceiveJournal.COMPRESSED : 0;
+        handler.onFrame(destination, source, buffer, offset, length, fcs);
+    }
+
+    private void advance() {
+        nakSent[expected] = false;
+        expected = (expected + 1) & Arq.SEQ_MASK;
+    }
+
+    // One ACK at a time: while one waits for the channel, later frames only mark another as owed, which then
+    // reports them all, so a slow reverse channel does not build up a queue of outdated ACKs
+    private void acknowledge() {
+        if (ackQueued) {
+            ackOwed = true;
+            return;
+        }
+        byte[] ack = new byte[ackLength];
+        ack[0] = Arq.control(Arq.ACK, expected);
+        for (int i = 0; i < (ackLength - 1) * 8; i++) {
+            if (present[(expected + 1 + i) & Arq.SEQ_MASK] && i + 1 < window) {
+                ack[1 + i / 8] |= (byte) (0x80 >>> (i % 8));
+            }
+        }
+        byte[] sealed = unambiguous(ack);
+        if (sealed == null) {
+            // Give up the selective part rather than send something the framing garbles; the next ACK has it again
+            sealed = unambiguous(new byte[] {ack[0]});
+        }
+        if (sealed == null) {
+            return; // The sender's timers cover it
+        }
+        ackQueued = true;
+        replies.sendAsync(sealed, Arq.QUIET).whenComplete((failed, error) -> onAckSent());
+    }
+
+    private synchronized void onAckSent() {
+        ackQueued = false;
+        if (ackOwed) {
+            ackOwed = false;
+            acknowledge();
+        }
+    }
+
+    private void reply(byte[] frame) {
+        if (frame != null) {
+            replies.sendAsync(frame, Arq.QUIET);
+        }
+    }
+
+    // The reply with its check, followed by as few zero bytes as make a frame the receiver cannot get wrong;
+    // the sender reads them as an empty part of the ACK bitmap, or not at all after a NAK. Null if none fits.
+    private byte[] unambiguous(byte[] content) {
+        for (int length = content.length; length + Arq.CHECK_LENGTH <= capacity; length++) {
+            byte[] frame = Arrays.copyOf(content, length + Arq.CHECK_LENGTH);
+            Arq.seal(frame, length);
+            if (!encoder.isAmbiguous(frame, 0, frame.length, FrameFormat.BROADCAST, source)) {
+                return frame;
+            }
+        }
+        return null;
+    }
+}
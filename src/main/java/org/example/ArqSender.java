@@ -0,0 +1,300 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sending end of selective-repeat ARQ. Messages are cut into numbered frames and up to
+ * a window of them are kept on the line unacknowledged, each through the CSMA/CD
+ * {@link SenderSession}. A frame is sent again when it is NAKed or its timer runs out,
+ * and only that frame. ACKs and NAKs are read from the same transport. When a frame
+ * runs out of retries the link is considered down and every pending message fails.
+ * A frame is cut short where the receiver could otherwise not get its data back
+ * exactly, see {@link FrameEncoder#isAmbiguous}. With compression on, messages are
+ * deflated a part at a time as the window opens, so a large message is never held
+ * deflated in full, and the stream the receiver inflates is the one put back in order.
+ */
+public final class ArqSender implements AutoCloseable {
+    private final SenderSession session;
+    private final FrameEncoder encoder; // Only to find where binary data has to be cut
+    private final int source;
+    private final ReceiverSession replies;
+    private final LinkMetrics metrics = LinkMetrics.global();
+    private final int window;
+    private final int segmentLength;
+    private final long timeoutMs;
+    private final int maxRetries;
+    private final Queue<Outgoing> queue = new ArrayDeque<>(); // Everything mutable is guarded by this
+    private final Slot[] slots = new Slot[Arq.SEQ_SPACE];
+    private int base; // Oldest unacknowledged seq
+    private int nextSeq;
+    private int inFlight;
+    private IOException failure;
+    private boolean compression;
+    private Compressor compressor;
+
+    private static final class Outgoing {
+        final ByteBuffer message; // Position is the next byte to cut into a frame, or to deflate
+        final boolean compressed;
+        final CompletableFuture<Integer> result = new CompletableFuture<>();
+        ByteBuffer data; // What frames are cut from: the message, or the part of it deflated last
+        int unacknowledged;
+
+        Outgoing(ByteBuffer message, boolean compressed) {
+            this.message = message;
+            this.compressed = compressed;
+            this.data = compressed ? ByteBuffer.allocate(0) : message;
+        }
+
+        // Every byte is in a frame: none left in the message, nor in the part deflated last
+        boolean isCut() {
+            return !data.hasRemaining() && !message.hasRemaining();
+        }
+    }
+
+    private static final class Slot {
+        final byte[] frame;
+        int length;
+        Outgoing owner;
+        boolean compressed;
+        boolean acknowledged;
+        int retries;
+        int generation; // Tells a timer for this transmission from a stale one
+        boolean queued; // Waiting in the session behind other frames, timer not started yet
+        ScheduledFuture<?> timer;
+
+        Slot(int capacity) {
+            frame = new byte[capacity];
+        }
+    }
+
+    public ArqSender(Transport transport, FrameFormat format, int window, long timeoutMs, int maxRetries) {
+        this.window = Arq.window(format, window);
+        this.segmentLength = format.getDataCapacity() - 1 - Arq.CHECK_LENGTH;
+        this.timeoutMs = timeoutMs;
+        this.maxRetries = maxRetries;
+        for (int i = 0; i < slots.length; i++) {
+            slots[i] = new Slot(format.getDataCapacity());
+        }
+        this.session = new SenderSession(transport, format);
+        this.encoder = new FrameEncoder(format);
+        this.source = LinkPorts.portNumber(transport.getName());
+        this.replies = new ReceiverSession(transport, format, this::onReply);
+        this.replies.setDiscardCorrupt(true);
+        this.replies.start();
+    }
+
+    public SenderSession getSession() {
+        return session;
+    }
+
+    public int getWindow() {
+        return window;
+    }
+
+    /**
+     * Deflates messages queued from now on into one stream, see {@link Compressor}, and
+     * marks their frames with {@link FrameFormat#COMPRESSED_FLAG}.
+     */
+    public synchronized void setCompression(boolean compression) {
+        this.compression = compression;
+    }
+
+    /**
+     * Queues the message; frames of later messages follow it in order.
+     *
+     * @return completes with 0 once every frame has been acknowledged, or exceptionally
+     * if the link goes down first
+     */
+    public CompletableFuture<Integer> send(byte[] message) {
+        return send(ByteBuffer.wrap(message));
+    }
+
+    /**
+     * Queues the remaining bytes of the buffer, which may be a file mapping; they are read
+     * as the window opens and the buffer itself is left as it is.
+     */
+    public synchronized CompletableFuture<Integer> send(ByteBuffer message) {
+        boolean compressed = compression && message.hasRemaining();
+        if (compressed && compressor == null) {
+            compressor = new Compressor();
+        }
+        Outgoing outgoing = new Outgoing(message.duplicate(), compressed);
+        if (failure != null) {
+            outgoing.result.completeExceptionally(failure);
+        } else if (!message.hasRemaining()) {
+            outgoing.result.complete(0);
+        } else {
+            queue.add(outgoing);
+            fill();
+        }
+        return outgoing.result;
+    }
+
+    @Override
+    public synchronized void close() {
+        replies.stop();
+        fail(new IOException("ARQ sender on " + session.getPortName() + " closed"));
+    }
+
+    // Puts new frames on the line while the window has room
+    private void fill() {
+        while (inFlight < window && !queue.isEmpty()) {
+            Outgoing outgoing = queue.peek();
+            if (!outgoing.data.hasRemaining()) {
+                // Messages are queued in the order they were sent, so the stream is deflated in that order too
+                outgoing.data = compressor.compressPart(outgoing.message);
+            }
+            ByteBuffer data = outgoing.data;
+            int taken = Math.min(segmentLength, data.remaining());
+            int seq = nextSeq;
+            Slot slot = slots[seq];
+            slot.frame[0] = Arq.control(Arq.DATA, seq);
+            data.get(slot.frame, 1, taken);
+            int length = taken;
+            int destination = outgoing.compressed ? FrameFormat.COMPRESSED_FLAG : 0;
+            slot.length = Arq.seal(slot.frame, 1 + length);
+            while (length > 1 && encoder.isAmbiguous(slot.frame, 0, slot.length, destination, source)) {
+                slot.length = Arq.seal(slot.frame, 1 + --length);
+            }
+            data.position(data.position() - (taken - length)); // The rest goes in the next frame
+            slot.owner = outgoing;
+            slot.compressed = outgoing.compressed;
+            slot.acknowledged = false;
+            slot.retries = 0;
+            outgoing.unacknowledged++;
+            if (outgoing.isCut()) {
+                queue.poll();
+            }
+            nextSeq = (nextSeq + 1) & Arq.SEQ_MASK;
+            inFlight++;
+            transmit(seq);
+        }
+    }
+
+    private void transmit(int seq) {
+        Slot slot = slots[seq];
+        if (slot.timer != null) {
+            slot.timer.cancel(false);
+            slot.timer = null;
+        }
+        int generation = ++slot.generation;
+        slot.queued = true;
+        // A copy, since the slot may be reused before a queued retransmission goes out
+        ByteBuffer frame = ByteBuffer.wrap(Arrays.copyOf(slot.frame, slot.length));
+        (slot.compressed ? session.sendCompressedAsync(frame, Arq.QUIET) : session.sendAsync(frame, Arq.QUIET))
+                .whenComplete((failed, error) -> onSent(seq, generation));
+    }
+
+    // The timer runs from when the frame left, not from when it was queued behind a busy channel
+    private synchronized void onSent(int seq, int generation) {
+        Slot slot = slots[seq];
+        if (slot.generation != generation) {
+            return;
+        }
+        slot.queued = false;
+        if (!slot.acknowledged && failure == null) {
+            slot.timer = Arq.TIMERS.schedule(() -> onTimeout(seq, generation), timeoutMs, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    private synchronized void onTimeout(int seq, int generation) {
+        Slot slot = slots[seq];
+        if (slot.generation == generation && !slot.acknowledged && failure == null) {
+            retransmit(seq);
+        }
+    }
+
+    private void retransmit(int seq) {
+        Slot slot = slots[seq];
+        if (slot.queued) {
+            return; // Going out again already
+        }
+        if (++slot.retries > maxRetries) {
+            fail(new IOException("Frame " + seq + " on " + session.getPortName() + " unacknowledged after " + maxRetries + " retries"));
+            return;
+        }
+        metrics.arqRetransmission();
+        transmit(seq);
+    }
+
+    private synchronized void onReply(int destination, int source, byte[] buffer, int offset, int length, byte fcs) {
+        length = Arq.unseal(buffer, offset, length);
+        if (length < 0 || failure != null) {
+            return;
+        }
+        int type = Arq.type(buffer[offset]);
+        int seq = Arq.seq(buffer[offset]);
+        if (type == Arq.NAK) {
+            if (isOutstanding(seq) && !slots[seq].acknowledged) {
+                retransmit(seq);
+            }
+        } else if (type == Arq.ACK) {
+            int acknowledgedUpTo = Arq.distance(base, seq); // Everything before seq has arrived
+            if (acknowledgedUpTo > inFlight) {
+                return; // Stale or garbled
+            }
+            for (int i = 0; i < acknowledgedUpTo; i++) {
+                acknowledge((base + i) & Arq.SEQ_MASK);
+            }
+            for (int i = 0; i < (length - 1) * 8; i++) {
+                int held = (seq + 1 + i) & Arq.SEQ_MASK;
+                if ((buffer[offset + 1 + i / 8] & (0x80 >>> (i % 8))) != 0 && isOutstanding(held)) {
+                    acknowledge(held);
+                }
+            }
+            while (inFlight > 0 && slots[base].acknowledged) {
+                base = (base + 1) & Arq.SEQ_MASK;
+                inFlight--;
+            }
+            fill();
+        }
+    }
+
+    private boolean isOutstanding(int seq) {
+        return Arq.distance(base, seq) < inFlight;
+    }
+
+    private void acknowledge(int seq) {
+        Slot slot = slots[seq];
+        if (slot.acknowledged) {
+            return;
+        }
+        slot.acknowledged = true;
+        if (slot.timer != null) {
+            slot.timer.cancel(false);
+            slot.timer = null;
+        }
+        Outgoing owner = slot.owner;
+        slot.owner = null;
+        if (--owner.unacknowledged == 0 && owner.isCut()) {
+            owner.result.complete(0);
+        }
+    }
+
+    private void fail(IOException e) {
+        if (failure != null) {
+            return;
+        }
+        failure = e;
+        for (Slot slot : slots) {
+            if (slot.timer != null) {
+                slot.timer.cancel(false);
+            }
+            if (slot.owner != null) {
+                slot.owner.result.completeExceptionally(e);
+                slot.owner = null;
+            }
+        }
+        for (Outgoing outgoing : queue) {
+            outgoing.result.completeExceptionally(e);
+        }
+        queue.clear();
+    }
+}
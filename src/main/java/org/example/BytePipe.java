@@ -0,0 +1,169 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.LockSupport;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded in-memory byte channel between two threads, optionally paced to a baud rate
+ * (10 bits per byte, as on an 8N1 line). Writers block while the pipe is full.
+ */
+final class BytePipe {
+    private final ByteRingBuffer ring;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition notEmpty = lock.newCondition();
+    private final Condition notFull = lock.newCondition();
+    private final long nanosPerByte;
+    private long lineFreeAt; // When the simulated line has finished the previous write
+    private boolean closed;
+
+    BytePipe(int capacity, int baudRate) {
+        ring = new ByteRingBuffer(capacity);
+        nanosPerByte = baudRate > 0 ? TimeUnit.SECONDS.toNanos(10) / baudRate : 0;
+    }
+
+    int available() {
+        lock.lock();
+        try {
+            return ring.available();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void write(byte[] src, int offset, int length) throws IOException {
+        while (length > 0) {
+            int written;
+            lock.lock();
+            try {
+                while (ring.remaining() == 0 && !closed) {
+                    notFull.await();
+                }
+                if (closed) {
+                    throw new IOException("Pipe closed");
+                }
+                written = ring.write(src, offset, length);
+                notEmpty.signalAll();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException();
+            } finally {
+                lock.unlock();
+            }
+            pace(written);
+            offset += written;
+            length -= written;
+        }
+    }
+
+    /**
+     * Blocks until at least one byte is buffered, then reads what is there.
+     *
+     * @return bytes read, -1 once the pipe is closed and drained
+     */
+    int read(byte[] dst, int offset, int length) throws IOException {
+        lock.lock();
+        try {
+            while (ring.available() == 0) {
+                if (closed) {
+                    return -1;
+                }
+                notEmpty.await();
+            }
+            int count = Math.min(length, ring.available());
+            for (int i = 0; i < count; i++) {
+                dst[offset + i] = ring.take();
+            }
+            notFull.signalAll();
+            return count;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Waits until data is buffered or the timeout passes.
+     *
+     * @return false once the pipe is closed and drained
+     */
+    boolean awaitData(long timeout, TimeUnit unit) throws InterruptedException {
+        long nanos = unit.toNanos(timeout);
+        lock.lock();
+        try {
+            while (ring.available() == 0 && !closed && nanos > 0) {
+                nanos = notEmpty.awaitNanos(nanos);
+            }
+            return ring.available() > 0 || !closed;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    void close() {
+        lock.lock();
+        try {
+            closed = true;
+            notEmpty.signalAll();
+            notFull.signalAll();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    InputStream inputStream() {
+        return new InputStream() {
+            @Override
+            public int read() throws IOException {
+                byte[] one = new byte[1];
+                return BytePipe.this.read(one, 0, 1) == -1 ? -1 : one[0] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                return len == 0 ? 0 : BytePipe.this.read(b, off, len);
+            }
+
+            @Override
+            public int available() {
+                return BytePipe.this.available();
+            }
+        };
+    }
+
+    OutputStream outputStream() {
+        return new OutputStream() {
+            @Override
+            public void write(int b) throws IOException {
+                BytePipe.this.write(new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                BytePipe.this.write(b, off, len);
+            }
+        };
+    }
+
+    // Holds the writer for as long as the bytes would take on the line
+    private void pace(int count) {
+        if (nanosPerByte == 0) {
+            return;
+        }
+        long now = System.nanoTime();
+        long start = Math.max(now, lineFreeAt);
+        lineFreeAt = start + count * nanosPerByte;
+        long wait = lineFreeAt - now;
+        while (wait > 0) {
+            LockSupport.parkNanos(wait);
+            wait = lineFreeAt - System.nanoTime();
+        }
+    }
+}
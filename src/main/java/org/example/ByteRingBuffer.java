@@ -0,0 +1,78 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Single-reader, single-writer byte ring. The backing array is allocated once and
+ * port reads land in it directly, so nothing is copied or allocated per read.
+ */
+public final class ByteRingBuffer {
+    private final byte[] buffer;
+    private final int mask;
+    private long head; // Next byte to take
+    private long tail; // Next free slot
+
+    public ByteRingBuffer(int capacity) {
+        if (capacity <= 0) {
+            throw new IllegalArgumentException("Capacity must be positive: " + capacity);
+        }
+        int size = Integer.highestOneBit(capacity);
+        if (size < capacity) {
+            size <<= 1;
+        }
+        buffer = new byte[size];
+        mask = size - 1;
+    }
+
+    public int capacity() {
+        return buffer.length;
+    }
+
+    public int available() {
+        return (int) (tail - head);
+    }
+
+    public int remaining() {
+        return buffer.length - available();
+    }
+
+    public int write(byte[] src, int offset, int length) {
+        int count = Math.min(length, remaining());
+        int start = (int) (tail & mask);
+        int first = Math.min(count, buffer.length - start);
+        System.arraycopy(src, offset, buffer, start, first);
+        System.arraycopy(src, offset + first, buffer, 0, count - first);
+        tail += count;
+        return count;
+    }
+
+    /**
+     * Reads from the stream straight into the free space of the ring.
+     *
+     * @return bytes read, 0 if the ring is full, -1 at end of stream
+     */
+    public int readFrom(InputStream in) throws IOException {
+        int free = remaining();
+        if (free == 0) {
+            return 0;
+        }
+        int start = (int) (tail & mask);
+        int numRead = in.read(buffer, start, Math.min(free, buffer.length - start));
+        if (numRead > 0) {
+            tail += numRead;
+        }
+        return numRead;
+    }
+
+    public byte take() {
+        if (head == tail) {
+            throw new IllegalStateException("Ring buffer is empty");
+        }
+        return buffer[(int) (head++ & mask)];
+    }
+
+    public void clear() {
+        head = tail;
+    }
+}
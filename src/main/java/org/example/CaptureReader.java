@@ -0,0 +1,76 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Reads a {@link WireCapture} file back through a read-only mapping.
+ */
+public final class CaptureReader implements Closeable {
+    /**
+     * One record; the buffer is reused and only valid for the duration of the call.
+     */
+    public interface Visitor {
+        void onRecord(long nanos, byte direction, byte[] buffer, int offset, int length) throws IOException;
+    }
+
+    private final FileChannel channel;
+    private final MappedByteBuffer map;
+    private final long startMillis;
+
+    public CaptureReader(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        if (channel.size() > Integer.MAX_VALUE) {
+            channel.close();
+            throw new IOException("Capture too large to map: " + file);
+        }
+        map = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (map.remaining() < WireCapture.HEADER_LENGTH || map.getInt() != WireCapture.MAGIC) {
+            channel.close();
+            throw new IOException("Not a wire capture: " + file);
+        }
+        int version = map.getInt();
+        if (version != WireCapture.VERSION) {
+            channel.close();
+            throw new IOException("Unsupported capture version " + version + ": " + file);
+        }
+        startMillis = map.getLong();
+    }
+
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    /**
+     * Visits every record in order, from the first one each time.
+     */
+    public void forEach(Visitor visitor) throws IOException {
+        byte[] buffer = new byte[4096];
+        int position = WireCapture.HEADER_LENGTH;
+        int limit = map.limit();
+        while (position + WireCapture.RECORD_HEADER_LENGTH <= limit) {
+            long nanos = map.getLong(position);
+            byte direction = map.get(position + 8);
+            int length = map.getInt(position + 9);
+            if (direction == WireCapture.END || length <= 0 || position + WireCapture.RECORD_HEADER_LENGTH + length > limit) {
+                return;
+            }
+            if (buffer.length < length) {
+                buffer = new byte[Math.max(length, buffer.length * 2)];
+            }
+            map.position(position + WireCapture.RECORD_HEADER_LENGTH);
+            map.get(buffer, 0, length);
+            visitor.onRecord(nanos, direction, buffer, 0, length);
+            position += WireCapture.RECORD_HEADER_LENGTH + length;
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
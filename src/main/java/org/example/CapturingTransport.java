@@ -0,0 +1,111 @@
+package org.example;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Transport that records everything read from and written to the one it wraps.
+ */
+final class CapturingTransport implements Transport {
+    private static final Logger logger = Logger.getLogger(CapturingTransport.class.getName());
+
+    private final Transport transport;
+    private final WireCapture capture;
+    private final InputStream input;
+    private final OutputStream output;
+
+    CapturingTransport(Transport transport, WireCapture capture) {
+        this.transport = transport;
+        this.capture = capture;
+        this.input = new FilterInputStream(transport.getInputStream()) {
+            @Override
+            public int read() throws IOException {
+                int b = super.read();
+                if (b >= 0) {
+                    capture.record(WireCapture.RECEIVED, new byte[]{(byte) b}, 0, 1);
+                }
+                return b;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                int numRead = super.read(b, off, len);
+                capture.record(WireCapture.RECEIVED, b, off, numRead);
+                return numRead;
+            }
+        };
+        this.output = new FilterOutputStream(transport.getOutputStream()) {
+            @Override
+            public void write(int b) throws IOException {
+                out.write(b);
+                capture.record(WireCapture.SENT, new byte[]{(byte) b}, 0, 1);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                out.write(b, off, len); // FilterOutputStream would write byte by byte
+                capture.record(WireCapture.SENT, b, off, len);
+            }
+        };
+    }
+
+    @Override
+    public String getName() {
+        return transport.getName();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return transport.isOpen();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return input;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return output;
+    }
+
+    @Override
+    public int bytesAvailable() {
+        return transport.bytesAvailable();
+    }
+
+    @Override
+    public void setDataListener(Runnable onDataAvailable) {
+        transport.setDataListener(onDataAvailable);
+    }
+
+    @Override
+    public void removeDataListener() {
+        transport.removeDataListener();
+    }
+
+    @Override
+    public LineSettings getLineSettings() {
+        return transport.getLineSettings();
+    }
+
+    @Override
+    public boolean setLineSettings(LineSettings settings) {
+        return transport.setLineSettings(settings);
+    }
+
+    @Override
+    public void close() {
+        transport.close();
+        try {
+            capture.close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error closing capture of " + transport.getName(), e);
+        }
+    }
+}
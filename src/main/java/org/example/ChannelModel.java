@@ -0,0 +1,23 @@
+package org.example;
+
+/**
+ * The simulated medium a session sees: carrier sense, collisions, backoff draws and
+ * bit errors. Each session owns its model and calls it from one thread only.
+ */
+public interface ChannelModel {
+    boolean isBusy();
+
+    boolean isCollision();
+
+    /**
+     * Backoff slots to wait after a collision, uniform in [0, 2^exponent].
+     */
+    int backoffSlots(int exponent);
+
+    /**
+     * Damages received data in place the way the line would.
+     *
+     * @return bits flipped, 0 if the data was left alone
+     */
+    int corrupt(byte[] buffer, int offset, int length);
+}
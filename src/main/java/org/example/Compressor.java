@@ -0,0 +1,92 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.Deflater;
+
+/**
+ * Sending half of the compression stage. Messages are deflated into one zlib stream per
+ * session, so what earlier frames and messages taught the dictionary keeps paying off
+ * for later ones, which is where short text messages gain most. Each message is sync
+ * flushed, so all of it can be inflated from its own frames without waiting for the
+ * next. Every {@link #STREAM_LENGTH} bytes of input the stream is finished and a new one
+ * begun: deflate cannot refer back further than that anyway, and a receiver that lost a
+ * frame picks up again at the new stream.
+ *
+ * One per {@link ArqSender}, which deflates its messages a part at a time, in the
+ * order they were sent; not thread safe.
+ */
+final class Compressor {
+    static final int STREAM_LENGTH = 32 << 10; // The deflate window
+    private static final int INPUT_CHUNK = 4096; // Copied at a time from a buffer without an array
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+    private final LinkMetrics metrics = LinkMetrics.global();
+    private byte[] output = new byte[FrameFormat.MAX_PAYLOAD];
+    private byte[] input;
+    private int produced;
+    private int streamed; // Input since the stream began
+
+    /**
+     * Deflates the message up to where the current stream ends, and moves its position
+     * past what was taken. A sender that starts a frame with what comes next lets a
+     * receiver that lost track pick up there.
+     *
+     * @return the deflated bytes, in a buffer of their own
+     */
+    ByteBuffer compressPart(ByteBuffer message) {
+        produced = 0;
+        deflatePart(message);
+        return ByteBuffer.wrap(Arrays.copyOf(output, produced));
+    }
+
+    private void deflatePart(ByteBuffer message) {
+        if (!message.hasRemaining()) {
+            return; // A flush would cost five bytes for nothing
+        }
+        int length = Math.min(message.remaining(), STREAM_LENGTH - streamed);
+        int start = produced;
+        if (message.hasArray()) {
+            deflate(message.array(), message.arrayOffset() + message.position(), length);
+            message.position(message.position() + length);
+        } else {
+            if (input == null) {
+                input = new byte[INPUT_CHUNK];
+            }
+            for (int left = length; left > 0; ) {
+                int chunk = Math.min(left, input.length);
+                message.get(input, 0, chunk);
+                deflate(input, 0, chunk);
+                left -= chunk;
+            }
+        }
+        streamed += length;
+        if (streamed == STREAM_LENGTH) {
+            deflater.finish();
+            while (!deflater.finished()) {
+                drain(Deflater.NO_FLUSH);
+            }
+            deflater.reset();
+            streamed = 0;
+        } else {
+            do {
+                drain(Deflater.SYNC_FLUSH);
+            } while (produced == output.length); // A full buffer may have left some of the flush behind
+        }
+        metrics.compressed(length, produced - start);
+    }
+
+    private void deflate(byte[] buffer, int offset, int length) {
+        deflater.setInput(buffer, offset, length);
+        while (!deflater.needsInput()) {
+            drain(Deflater.NO_FLUSH);
+        }
+    }
+
+    private void drain(int flush) {
+        if (produced == output.length) {
+            output = Arrays.copyOf(output, output.length * 2);
+        }
+        produced += deflater.deflate(output, produced, output.length - produced, flush);
+    }
+}
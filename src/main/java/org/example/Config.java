@@ -1,30 +1,196 @@
 package org.example;
 
 import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.*;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Properties;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
 
+/**
+ * config.properties in the working directory.
+ *
+ * Changes are kept in memory and written shortly afterwards in one go. A write holds an
+ * exclusive lock on config.properties.lock, merges our changes into what is on disk at
+ * that moment, so other processes' keys survive, and replaces the file by renaming a
+ * temporary file over it, so readers never see half a file. Listeners are told when
+ * the file changes on disk, whoever changed it.
+ */
 public class Config {
+    private static final Logger logger = Logger.getLogger(Config.class.getName());
     private static final String CONFIG_FILE = "config.properties";
-    private static Properties properties = new Properties();
+    private static final long WRITE_DELAY_MS = 200; // Changes within this window go out in one write
+
+    private static final Path path = Paths.get(CONFIG_FILE).toAbsolutePath();
+    private static final Path lockPath = path.resolveSibling(CONFIG_FILE + ".lock");
+    private static final Object fileLock = new Object(); // FileLock is per process, this keeps our own threads apart
+    private static final Map<String, String> pending = new LinkedHashMap<>(); // Guarded by Config.class
+    private static final List<Runnable> listeners = new CopyOnWriteArrayList<>();
+    private static final ScheduledExecutorService writer = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "config-writer");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private static volatile Properties properties = new Properties();
+    private static ScheduledFuture<?> scheduledWrite; // Guarded by Config.class
+    private static Thread watcher; // Guarded by Config.class
 
     static {
         try (InputStream input = new FileInputStream(CONFIG_FILE)) {
             properties.load(input);
+        } catch (FileNotFoundException ex) {
+            logger.info(CONFIG_FILE + " not found, using defaults");
         } catch (IOException ex) {
-            ex.printStackTrace();
+            logger.log(Level.WARNING, "Could not read " + CONFIG_FILE, ex);
         }
+        Runtime.getRuntime().addShutdownHook(new Thread(Config::flush, "config-flush"));
     }
 
     public static String getProperty(String key) {
         return properties.getProperty(key);
     }
 
-    public static void setProperty(String key, String value) {
+    public static synchronized void setProperty(String key, String value) {
         properties.setProperty(key, value);
-        try (OutputStream output = new FileOutputStream(CONFIG_FILE)) {
-            properties.store(output, null);
+        pending.put(key, value);
+        if (scheduledWrite == null) {
+            scheduledWrite = writer.schedule(Config::flush, WRITE_DELAY_MS, TimeUnit.MILLISECONDS);
+        }
+    }
+
+    /**
+     * Writes pending changes now. Safe to call from shutdown hooks.
+     */
+    public static void flush() {
+        synchronized (fileLock) {
+            // Taken once any write before this one is done, so an older value never goes out after a newer one
+            Map<String, String> changes;
+            synchronized (Config.class) {
+                scheduledWrite = null;
+                if (pending.isEmpty()) {
+                    return;
+                }
+                changes = new LinkedHashMap<>(pending); // Left pending until written, so a reload keeps them meanwhile
+            }
+            try (FileChannel channel = FileChannel.open(lockPath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+                FileLock lock = channel.lock();
+                try {
+                    Properties merged = load();
+                    for (Map.Entry<String, String> change : changes.entrySet()) {
+                        merged.setProperty(change.getKey(), change.getValue());
+                    }
+                    Path temp = Files.createTempFile(path.getParent(), CONFIG_FILE, ".tmp");
+                    try {
+                        try (OutputStream output = Files.newOutputStream(temp)) {
+                            merged.store(output, null);
+                        }
+                        replace(temp, path);
+                    } finally {
+                        Files.deleteIfExists(temp);
+                    }
+                    synchronized (Config.class) {
+                        for (Map.Entry<String, String> change : changes.entrySet()) {
+                            pending.remove(change.getKey(), change.getValue()); // Unless changed again since
+                        }
+                        apply(merged);
+                    }
+                } finally {
+                    lock.release();
+                }
+            } catch (IOException io) {
+                logger.log(Level.WARNING, "Could not write " + CONFIG_FILE + ", will retry with the next change", io);
+            }
+        }
+    }
+
+    /**
+     * Runs the listener, on a background thread, whenever config.properties changes on disk.
+     */
+    public static synchronized void addListener(Runnable listener) {
+        listeners.add(listener);
+        if (watcher == null) {
+            watcher = new Thread(Config::watch, "config-watcher");
+            watcher.setDaemon(true);
+            watcher.start();
+        }
+    }
+
+    public static void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    private static void watch() {
+        try (WatchService service = path.getFileSystem().newWatchService()) {
+            path.getParent().register(service, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY);
+            while (true) {
+                WatchKey key = service.take();
+                boolean touched = false;
+                for (WatchEvent<?> event : key.pollEvents()) {
+                    touched |= path.getFileName().equals(event.context());
+                }
+                key.reset();
+                if (touched) {
+                    reload();
+                }
+            }
+        } catch (IOException io) {
+            logger.log(Level.WARNING, "Stopped watching " + CONFIG_FILE, io);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    // Under fileLock, so it cannot load the file from before one of our writes and apply it after
+    static void reload() {
+        try {
+            synchronized (fileLock) {
+                if (!apply(load())) {
+                    return; // Our own write, or a touch without changes
+                }
+            }
         } catch (IOException io) {
-            io.printStackTrace();
+            logger.log(Level.WARNING, "Could not reload " + CONFIG_FILE, io);
+            return;
+        }
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+    }
+
+    private static Properties load() throws IOException {
+        Properties loaded = new Properties();
+        if (Files.exists(path)) {
+            try (InputStream input = Files.newInputStream(path)) {
+                loaded.load(input);
+            }
+        }
+        return loaded;
+    }
+
+    // Our unwritten changes win over the file; returns whether anything visible changed
+    private static synchronized boolean apply(Properties loaded) {
+        for (Map.Entry<String, String> change : pending.entrySet()) {
+            loaded.setProperty(change.getKey(), change.getValue());
+        }
+        boolean changed = !loaded.equals(properties);
+        properties = loaded;
+        return changed;
+    }
+
+    private static void replace(Path source, Path target) throws IOException {
+        try {
+            Files.move(source, target, StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+        } catch (AtomicMoveNotSupportedException e) {
+            Files.move(source, target, StandardCopyOption.REPLACE_EXISTING);
         }
     }
-}
\ No newline at end of file
+}
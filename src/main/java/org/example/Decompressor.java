@@ -0,0 +1,82 @@
+package org.example;
+
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Receiving half of the compression stage: frames marked with
+ * {@link FrameFormat#COMPRESSED_FLAG} are inflated as one stream and what comes out is
+ * handed on, a piece at a time and without the mark; other frames are handed on as they
+ * are. Frames must come in the order they were sent.
+ *
+ * Inflating starts with the first frame of a stream, so a receiver that comes in half
+ * way, or has lost a frame and with it the thread of the stream, drops frames until the
+ * sender begins the next one (see {@link Compressor}). Over ARQ nothing is lost.
+ *
+ * Used by {@link ArqReceiver} on the reader thread of its session; not thread safe.
+ */
+final class Decompressor implements FrameDecoder.Handler {
+    private static final int OUTPUT_SIZE = 1024;
+
+    private final FrameDecoder.Handler handler;
+    private final Inflater inflater = new Inflater();
+    private final byte[] output = new byte[OUTPUT_SIZE];
+    private final LinkMetrics metrics = LinkMetrics.global();
+    private boolean lost = true; // Came in half way or lost a frame: waiting for a frame that begins a stream
+
+    Decompressor(FrameDecoder.Handler handler) {
+        this.handler = handler;
+    }
+
+    @Override
+    public void onFrame(int destination, int source, byte[] buffer, int offset, int length, byte fcs) {
+        if ((destination & FrameFormat.COMPRESSED_FLAG) == 0) {
+            handler.onFrame(destination, source, buffer, offset, length, fcs);
+            return;
+        }
+        destination &= ~FrameFormat.COMPRESSED_FLAG;
+        if (lost) {
+            if (!isStreamStart(buffer, offset, length)) {
+                metrics.frameDropped();
+                return;
+            }
+            lost = false;
+            inflater.reset();
+        } else if (inflater.finished()) {
+            inflater.reset(); // The last frame ended a stream, this one begins the next
+        }
+        inflater.setInput(buffer, offset, length);
+        try {
+            while (true) {
+                int count;
+                while ((count = inflater.inflate(output)) > 0) {
+                    metrics.inflated(count);
+                    handler.onFrame(destination, source, output, 0, count, fcs);
+                }
+                if (inflater.needsDictionary()) {
+                    throw new DataFormatException("Stream needs a preset dictionary");
+                }
+                int rest = inflater.getRemaining();
+                if (!inflater.finished() || rest == 0) {
+                    return; // The rest is in the next frame
+                }
+                // The next stream begins in the same frame, from a sender that does not start frames with them
+                inflater.reset();
+                inflater.setInput(buffer, offset + length - rest, rest);
+            }
+        } catch (DataFormatException e) {
+            lost = true;
+            metrics.inflateFailure();
+        }
+    }
+
+    // The zlib header: deflate with a window of at most 32 KB, a check that divides by 31, no preset dictionary
+    private static boolean isStreamStart(byte[] buffer, int offset, int length) {
+        if (length < 2) {
+            return false;
+        }
+        int cmf = buffer[offset] & 0xFF;
+        int flg = buffer[offset + 1] & 0xFF;
+        return (cmf & 0x0F) == 8 && (cmf >>> 4) <= 7 && (cmf << 8 | flg) % 31 == 0 && (flg & 0x20) == 0;
+    }
+}
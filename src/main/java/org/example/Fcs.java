@@ -0,0 +1,109 @@
+package org.example;
+
+import java.util.Arrays;
+
+/**
+ * Frame check sequence over x^7 + x^4 + 1, masked to 6 bits, and the single-bit
+ * correction that goes with it. Both are table driven and work in place.
+ *
+ * Correction goes by the syndrome, the FCS of the received data XOR the FCS that came
+ * with it: a single flipped bit gives a syndrome that depends only on its position, so
+ * one lookup finds it. Six bits cannot tell many positions apart, though: every
+ * single-bit error of frames up to 2 bytes gives a syndrome of its own, only some of
+ * those of longer frames do, and none beyond {@link #MAX_CORRECTABLE_LENGTH} bytes. A
+ * syndrome that more than one position gives is reported as uncorrectable rather than
+ * guessed at.
+ */
+public final class Fcs {
+    public static final int MAX_CORRECTABLE_LENGTH = 26; // Longest frame with a single-bit error of unique syndrome
+    private static final int POLYNOMIAL = 0x91; // x^7 + x^4 + 1
+    private static final int MASK = 0x3F; // FCS is cut down to 6 bits
+    private static final short FCS_BIT = -1; // The bit flipped was in the FCS, the data is fine
+    private static final short AMBIGUOUS = -2; // More than one position gives the syndrome
+    private static final short NONE = -3; // No single-bit error gives it
+
+    private static final int[] CRC_TABLE = new int[256];
+    // Frame length in bytes -> syndrome -> bit to flip, counted from the first bit of the frame
+    private static final short[][] SYNDROME_POSITIONS = new short[MAX_CORRECTABLE_LENGTH + 1][MASK + 1];
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc = i;
+            for (int bit = 0; bit < 8; bit++) {
+                crc = shift(crc);
+            }
+            CRC_TABLE[i] = crc;
+        }
+        int[] syndromes = new int[MAX_CORRECTABLE_LENGTH * 8]; // Of a flipped bit, by its distance from the end of the frame
+        int register = 1;
+        for (int i = 0; i < 8; i++) {
+            register = shift(register);
+        }
+        for (int distance = 0; distance < syndromes.length; distance++) {
+            syndromes[distance] = register & MASK;
+            register = shift(register);
+        }
+        for (int length = 1; length <= MAX_CORRECTABLE_LENGTH; length++) {
+            short[] positions = SYNDROME_POSITIONS[length];
+            Arrays.fill(positions, NONE);
+            for (int bit = 0; bit < 6; bit++) {
+                positions[1 << bit] = FCS_BIT;
+            }
+            for (int distance = 0; distance < length * 8; distance++) {
+                int syndrome = syndromes[distance];
+                positions[syndrome] = positions[syndrome] == NONE ? (short) (length * 8 - 1 - distance) : AMBIGUOUS;
+            }
+        }
+    }
+
+    private Fcs() {
+    }
+
+    public static byte calculate(byte[] data) {
+        return calculate(data, 0, data.length);
+    }
+
+    public static byte calculate(byte[] data, int offset, int length) {
+        return (byte) (register(data, offset, length) & MASK);
+    }
+
+    /**
+     * Corrects a single flipped bit in {@code data[offset, offset + length)} in place, by
+     * the syndrome against the FCS the data came with.
+     *
+     * @return true if the data now matches the FCS, having had no error, one in the FCS
+     * itself or one that was flipped back; false if the error could not be located and the
+     * data was left untouched
+     */
+    public static boolean correct(byte[] data, int offset, int length, byte receivedFcs) {
+        int syndrome = (register(data, offset, length) ^ receivedFcs) & MASK;
+        if (syndrome == 0) {
+            return true;
+        }
+        if (length < 1 || length > MAX_CORRECTABLE_LENGTH) {
+            return false;
+        }
+        int position = SYNDROME_POSITIONS[length][syndrome];
+        if (position == FCS_BIT) {
+            return true;
+        }
+        if (position < 0) {
+            return false;
+        }
+        data[offset + position / 8] ^= (byte) (0x80 >>> (position % 8));
+        return true;
+    }
+
+    // Unmasked 8-bit CRC register after feeding the bytes
+    private static int register(byte[] data, int offset, int length) {
+        int crc = 0;
+        for (int i = offset, end = offset + length; i < end; i++) {
+            crc = CRC_TABLE[(crc ^ data[i]) & 0xFF];
+        }
+        return crc;
+    }
+
+    private static int shift(int crc) {
+        return (crc & 0x80) != 0 ? ((crc << 1) ^ POLYNOMIAL) & 0xFF : (crc << 1) & 0xFF;
+    }
+}
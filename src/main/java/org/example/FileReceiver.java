@@ -0,0 +1,140 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.zip.CRC32;
+
+/**
+ * Writes a file received in the {@link FileTransfer} format. Once the header is in,
+ * the output file is created at its full length and the data of each frame is put
+ * straight into a mapping of it, a region at a time, so memory does not grow with the
+ * file. The file is only done once the CRC after it matches what was written. Runs on
+ * the reader thread of the receiving session.
+ */
+public final class FileReceiver implements FrameDecoder.Handler, AutoCloseable {
+    private final Path file;
+    private final FileTransfer.Progress progress;
+    private final CompletableFuture<Path> result = new CompletableFuture<>();
+    private final ByteBuffer header = ByteBuffer.allocate(FileTransfer.HEADER_LENGTH);
+    private final ByteBuffer trailer = ByteBuffer.allocate(FileTransfer.TRAILER_LENGTH);
+    private final CRC32 crc = new CRC32();
+    private RandomAccessFile output; // Only used on the reader thread, and by close once it is done
+    private MappedByteBuffer region;
+    private long size = -1; // Not known before the header
+    private long written;
+    private long startedAt;
+
+    public FileReceiver(Path file, FileTransfer.Progress progress) {
+        this.file = file;
+        this.progress = progress;
+    }
+
+    /**
+     * Completes with the file once all of it has been written.
+     */
+    public CompletableFuture<Path> getResult() {
+        return result;
+    }
+
+    @Override
+    public synchronized void onFrame(int destination, int source, byte[] buffer, int offset, int length, byte fcs) {
+        if (result.isDone()) {
+            return;
+        }
+        try {
+            while (length > 0 && trailer.hasRemaining()) {
+                int n;
+                if (size < 0) {
+                    n = Math.min(length, header.remaining());
+                    header.put(buffer, offset, n);
+                    if (!header.hasRemaining()) {
+                        begin();
+                    }
+                } else if (written == size) {
+                    n = Math.min(length, trailer.remaining());
+                    trailer.put(buffer, offset, n);
+                } else {
+                    if (region == null || !region.hasRemaining()) {
+                        region = output.getChannel().map(FileChannel.MapMode.READ_WRITE, written,
+                                Math.min(FileTransfer.REGION_SIZE, size - written));
+                    }
+                    n = (int) Math.min(length, Math.min(region.remaining(), size - written));
+                    region.put(buffer, offset, n);
+                    crc.update(buffer, offset, n);
+                    long before = written;
+                    written += n;
+                    if (written / FileTransfer.CHUNK_SIZE != before / FileTransfer.CHUNK_SIZE) {
+                        progress.onProgress(written, size, System.nanoTime() - startedAt);
+                    }
+                }
+                offset += n;
+                length -= n;
+            }
+            if (!trailer.hasRemaining()) {
+                finish();
+            }
+        } catch (IOException | RuntimeException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Stops receiving; a transfer that has not completed fails.
+     */
+    @Override
+    public synchronized void close() {
+        if (!result.isDone()) {
+            fail(new IOException(written == size ? "Received " + file + " without its CRC"
+                    : "Received " + written + " of " + (size < 0 ? "?" : String.valueOf(size)) + " bytes of " + file));
+        }
+    }
+
+    private void begin() throws IOException {
+        header.flip();
+        byte[] magic = new byte[FileTransfer.MAGIC.length];
+        header.get(magic);
+        if (!Arrays.equals(magic, FileTransfer.MAGIC)) {
+            throw new IOException("Not a file transfer: " + Arrays.toString(magic));
+        }
+        size = header.getLong();
+        if (size < 0) {
+            throw new IOException("Bad file length " + size);
+        }
+        output = new RandomAccessFile(file.toFile(), "rw");
+        output.setLength(size); // All of it up front, so the disk cannot fill up half way
+        startedAt = System.nanoTime();
+    }
+
+    private void finish() throws IOException {
+        if (region != null) {
+            region.force();
+            region = null;
+        }
+        output.close();
+        trailer.flip();
+        int expected = trailer.getInt();
+        if (expected != (int) crc.getValue()) {
+            throw new IOException(String.format("%s arrived damaged: CRC-32 %08x, expected %08x", file, (int) crc.getValue(), expected));
+        }
+        progress.onProgress(written, size, System.nanoTime() - startedAt);
+        result.complete(file);
+    }
+
+    private void fail(Exception e) {
+        region = null;
+        if (output != null) {
+            try {
+                output.close();
+            } catch (IOException suppressed) {
+                e.addSuppressed(suppressed);
+            }
+        }
+        result.completeExceptionally(e);
+    }
+}
@@ -0,0 +1,164 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.zip.CRC32;
+
+/**
+ * Sends a file in the {@link FileTransfer} format. The file is mapped a region at a
+ * time and handed to the link in chunks that are slices of the mapping, so frames are
+ * encoded straight from the page cache and nothing is copied into a message first.
+ * Two chunks are kept queued so the line does not idle between them. The CRC is taken
+ * as chunks are queued and follows the last one.
+ */
+public final class FileSender {
+    private static final int CHUNKS_QUEUED = 2;
+
+    private final Path file;
+    private final Function<ByteBuffer, CompletableFuture<Integer>> link;
+    private final FileTransfer.Progress progress;
+    private final CompletableFuture<Integer> result = new CompletableFuture<>();
+    private final Queue<ByteBuffer> pending = new ArrayDeque<>(); // Taken from the file, not yet handed to the link
+    private final CRC32 crc = new CRC32();
+    private FileChannel channel; // Everything mutable is guarded by this
+    private long size;
+    private long startedAt;
+    private MappedByteBuffer region;
+    private long regionStart;
+    private long queuedUpTo; // File offset of the next chunk
+    private long sentUpTo;
+    private int queued;
+    private int failed;
+    private ByteBuffer header;
+    private ByteBuffer trailer; // Queued once the last chunk is
+    private boolean draining;
+
+    /**
+     * @param link sends a buffer, for instance {@code ArqSender::send}; completes with
+     *             the number of frames that could not be sent
+     */
+    public FileSender(Path file, Function<ByteBuffer, CompletableFuture<Integer>> link, FileTransfer.Progress progress) {
+        this.file = file;
+        this.link = link;
+        this.progress = progress;
+    }
+
+    /**
+     * @return completes with the number of frames that could not be sent once the whole
+     * file is through
+     */
+    public CompletableFuture<Integer> start() throws IOException {
+        synchronized (this) {
+            channel = FileChannel.open(file, StandardOpenOption.READ);
+            size = channel.size();
+            startedAt = System.nanoTime();
+            header = FileTransfer.header(size);
+            pending.add(header);
+            queued++;
+            fill();
+        }
+        drain();
+        return result;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    // Queues the next chunks, as slices of the mapping
+    private void fill() {
+        try {
+            while (queued < CHUNKS_QUEUED && queuedUpTo < size) {
+                if (region == null || queuedUpTo == regionStart + region.capacity()) {
+                    regionStart = queuedUpTo;
+                    region = channel.map(FileChannel.MapMode.READ_ONLY, regionStart, Math.min(FileTransfer.REGION_SIZE, size - regionStart));
+                }
+                int offset = (int) (queuedUpTo - regionStart);
+                int length = Math.min(FileTransfer.CHUNK_SIZE, region.capacity() - offset);
+                ByteBuffer chunk = region.duplicate();
+                chunk.position(offset).limit(offset + length);
+                crc.update(chunk.duplicate());
+                queuedUpTo += length;
+                queued++;
+                pending.add(chunk);
+            }
+            if (queuedUpTo == size && trailer == null) {
+                trailer = FileTransfer.trailer(crc);
+                queued++;
+                pending.add(trailer);
+            }
+        } catch (IOException | RuntimeException e) {
+            finish(e);
+        }
+    }
+
+    // Hands the queued chunks to the link in order, outside the lock since the link may complete a chunk while
+    // holding its own; one thread at a time does it, another that finds it busy leaves its chunks to that one
+    private void drain() {
+        synchronized (this) {
+            if (draining) {
+                return;
+            }
+            draining = true;
+        }
+        while (true) {
+            ByteBuffer chunk;
+            synchronized (this) {
+                chunk = pending.poll();
+                if (chunk == null) {
+                    draining = false;
+                    return;
+                }
+            }
+            int length = chunk == header || chunk == trailer ? 0 : chunk.remaining();
+            link.apply(chunk).whenComplete((chunkFailed, error) -> onSent(length, chunkFailed, error));
+        }
+    }
+
+    private void onSent(int length, Integer chunkFailed, Throwable error) {
+        synchronized (this) {
+            if (result.isDone()) {
+                return;
+            }
+            if (error != null) {
+                finish(error);
+                return;
+            }
+            queued--;
+            failed += chunkFailed;
+            sentUpTo += length;
+            progress.onProgress(sentUpTo, size, System.nanoTime() - startedAt);
+            if (queued == 0 && trailer != null) {
+                finish(null);
+                return;
+            }
+            fill();
+        }
+        drain();
+    }
+
+    private void finish(Throwable error) {
+        region = null; // The mapping goes with the buffer once nothing refers to it
+        pending.clear();
+        try {
+            channel.close();
+        } catch (IOException e) {
+            if (error == null) {
+                error = e;
+            }
+        }
+        if (error != null) {
+            result.completeExceptionally(error);
+        } else {
+            result.complete(failed);
+        }
+    }
+}
@@ -0,0 +1,74 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+import java.util.zip.CRC32;
+
+/**
+ * Stream format of a file sent over a link by {@link FileSender} and written by
+ * {@link FileReceiver}:
+ *
+ * <pre>
+ * "OKFT"      magic
+ * int64       file length
+ * bytes...    the file
+ * int32       CRC-32 of the file
+ * </pre>
+ *
+ * The stream is just data to the link, cut into frames like any other message, so it
+ * is only as reliable as the link: run it over ARQ to get the file back intact. Without
+ * ARQ the CRC at least tells the receiver when it did not.
+ */
+public final class FileTransfer {
+    static final byte[] MAGIC = {'O', 'K', 'F', 'T'};
+    static final int HEADER_LENGTH = MAGIC.length + 8;
+    static final int TRAILER_LENGTH = 4;
+    static final int REGION_SIZE = 16 << 20; // Mapped at a time, so memory does not grow with the file
+    static final int CHUNK_SIZE = 4096; // Handed to the link at a time; progress is reported per chunk
+
+    /**
+     * Called as the transfer goes on, and once more at the end.
+     */
+    public interface Progress {
+        void onProgress(long bytes, long total, long elapsedNanos);
+    }
+
+    private FileTransfer() {
+    }
+
+    /**
+     * Passes progress on at most once per interval, and always the end.
+     */
+    public static Progress throttled(long intervalMs, Progress progress) {
+        long interval = TimeUnit.MILLISECONDS.toNanos(intervalMs);
+        long[] reportedAt = {System.nanoTime() - interval};
+        return (bytes, total, elapsedNanos) -> {
+            long now = System.nanoTime();
+            if (bytes == total || now - reportedAt[0] >= interval) {
+                reportedAt[0] = now;
+                progress.onProgress(bytes, total, elapsedNanos);
+            }
+        };
+    }
+
+    static ByteBuffer header(long length) {
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.put(MAGIC).putLong(length).flip();
+        return header;
+    }
+
+    static ByteBuffer trailer(CRC32 crc) {
+        ByteBuffer trailer = ByteBuffer.allocate(TRAILER_LENGTH);
+        trailer.putInt((int) crc.getValue()).flip();
+        return trailer;
+    }
+
+    /**
+     * One line of progress, such as "1.5 of 3.0 MB (50%), 120.4 kB/s".
+     */
+    public static String describe(long bytes, long total, long elapsedNanos) {
+        double rate = elapsedNanos > 0 ? bytes * 1e9 / elapsedNanos : 0;
+        return String.format("%.1f of %.1f MB (%d%%), %.1f kB/s",
+                bytes / 1e6, total / 1e6, total > 0 ? bytes * 100 / total : 100, rate / 1e3);
+    }
+}
@@ -0,0 +1,38 @@
+package org.example;
+
+/**
+ * A decoded frame: addresses, unstuffed data and the FCS that came with it.
+ */
+public final class Frame {
+    private final int destination;
+    private final int source;
+    private final byte[] data;
+    private final byte fcs;
+
+    public Frame(int destination, int source, byte[] data, byte fcs) {
+        this.destination = destination;
+        this.source = source;
+        this.data = data;
+        this.fcs = fcs;
+    }
+
+    public int getDestination() {
+        return destination;
+    }
+
+    public int getSource() {
+        return source;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public byte getFcs() {
+        return fcs;
+    }
+
+    public boolean isFcsValid() {
+        return Fcs.calculate(data) == fcs;
+    }
+}
@@ -0,0 +1,190 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.function.Consumer;
+
+import static org.example.FrameEncoder.ESCAPE_MASK;
+import static org.example.FrameEncoder.FLAG_END;
+import static org.example.FrameEncoder.FLAG_START;
+
+/**
+ * Resumable frame decoder for a {@link FrameFormat}. Bytes are staged in a ring buffer
+ * and run through a state machine that hunts for the FLAG, undoes byte stuffing on the
+ * fly and emits a frame as soon as its FCS byte arrives. A frame split across reads is
+ * simply continued on the next read; a FLAG in the middle of a frame drops the partial
+ * frame and resyncs, as does a length byte beyond the format's payload size.
+ *
+ * Frames for destinations outside the accepted addresses are skipped as soon as their
+ * destination byte is in: the decoder goes back to hunting for the next FLAG, so their
+ * data is neither copied nor checked.
+ */
+public final class FrameDecoder {
+    public static final long ALL_ADDRESSES = -1L;
+
+    /**
+     * Receives decoded frames without any copying. The buffer belongs to the decoder
+     * and its contents are only valid for the duration of the call.
+     */
+    public interface Handler {
+        void onFrame(int destination, int source, byte[] buffer, int offset, int length, byte fcs);
+    }
+
+    private enum State { HUNT, FLAG, BODY, ESCAPE, CHECK }
+
+    private final ByteRingBuffer ring;
+    private final FrameFormat format;
+    private final int headerLength;
+    private final byte[] body; // Header and data of the frame being decoded
+    private State state = State.HUNT;
+    private int position;
+    private int bodyLength; // Upper bound until a variable frame's length byte is in
+    private long acceptedAddresses = ALL_ADDRESSES; // Bit n set: destination n is decoded
+    private long skippedFrames;
+
+    public FrameDecoder(int dataLength) {
+        this(FrameFormat.fixed(dataLength), 4096);
+    }
+
+    public FrameDecoder(FrameFormat format) {
+        this(format, 4096);
+    }
+
+    public FrameDecoder(FrameFormat format, int bufferCapacity) {
+        this.ring = new ByteRingBuffer(bufferCapacity);
+        this.format = format;
+        this.headerLength = format.getHeaderLength();
+        this.body = new byte[headerLength + format.getPayloadSize()];
+    }
+
+    /**
+     * Performs one read from the stream and decodes everything buffered so far.
+     *
+     * @return bytes read, or -1 at end of stream
+     */
+    public int readFrom(InputStream in, Handler handler) throws IOException {
+        int numRead = ring.readFrom(in);
+        drain(handler);
+        return numRead;
+    }
+
+    public int readFrom(InputStream in, Consumer<Frame> listener) throws IOException {
+        return readFrom(in, copying(listener));
+    }
+
+    public void feed(byte[] src, int offset, int length, Handler handler) {
+        while (length > 0) {
+            int written = ring.write(src, offset, length);
+            offset += written;
+            length -= written;
+            drain(handler);
+        }
+    }
+
+    public void feed(byte[] src, int offset, int length, Consumer<Frame> listener) {
+        feed(src, offset, length, copying(listener));
+    }
+
+    // Frame objects for consumers that keep frames beyond the callback
+    private static Handler copying(Consumer<Frame> listener) {
+        return (destination, source, buffer, offset, length, fcs) ->
+                listener.accept(new Frame(destination, source, Arrays.copyOfRange(buffer, offset, offset + length), fcs));
+    }
+
+    /**
+     * Decodes only frames whose destination, without flags, has its bit set in the mask;
+     * {@link #ALL_ADDRESSES} by default.
+     */
+    public void setAcceptedAddresses(long mask) {
+        acceptedAddresses = mask;
+    }
+
+    /**
+     * Frames skipped for their destination so far.
+     */
+    public long getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    public void reset() {
+        ring.clear();
+        state = State.HUNT;
+        position = 0;
+    }
+
+    private void startFrame() {
+        position = 0;
+        bodyLength = body.length;
+        state = State.BODY;
+    }
+
+    private void drain(Handler handler) {
+        while (ring.available() > 0) {
+            accept(ring.take(), handler);
+        }
+    }
+
+    private void accept(byte b, Handler handler) {
+        switch (state) {
+            case HUNT:
+                if (b == FLAG_START) {
+                    state = State.FLAG;
+                }
+                break;
+            case FLAG:
+                if (b == FLAG_END) {
+                    startFrame();
+                } else if (b != FLAG_START) {
+                    state = State.HUNT;
+                }
+                break;
+            case BODY:
+                if (b == FLAG_START) {
+                    state = State.ESCAPE; // Either a stuffed "@h", a data '@' or the next FLAG
+                } else {
+                    store(b);
+                }
+                break;
+            case ESCAPE:
+                if (b == FLAG_END) {
+                    startFrame(); // FLAG inside a frame: the previous one was cut short
+                } else if (b == ESCAPE_MASK && position + 1 < bodyLength) {
+                    store(FLAG_START);
+                    if (state == State.BODY) {
+                        store(FLAG_END);
+                    }
+                } else {
+                    store(FLAG_START);
+                    accept(b, handler);
+                }
+                break;
+            case CHECK:
+                if (b == FLAG_START) {
+                    state = State.FLAG; // FCS never has bit 6 set, so this is a FLAG
+                } else {
+                    state = State.HUNT;
+                    handler.onFrame(body[0] & 0xFF, body[1] & 0xFF, body, headerLength, bodyLength - headerLength, b);
+                }
+                break;
+        }
+    }
+
+    private void store(byte b) {
+        body[position++] = b;
+        if (position == 1 && (acceptedAddresses >>> (b & FrameFormat.ADDRESS_MASK) & 1) == 0) {
+            skippedFrames++;
+            state = State.HUNT; // Not for us: the rest is passed over up to the next FLAG
+            return;
+        }
+        if (position == headerLength && format.isVariableLength()) {
+            int length = b & 0xFF;
+            if (length > format.getPayloadSize()) {
+                state = State.HUNT; // Not a frame of this format
+                return;
+            }
+            bodyLength = headerLength + length;
+        }
+        state = position == bodyLength ? State.CHECK : State.BODY;
+    }
+}
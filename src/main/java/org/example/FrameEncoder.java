@@ -0,0 +1,214 @@
+package org.example;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+/**
+ * Builds wire frames in the layout given by the {@link FrameFormat}, with "@h" in the
+ * header and data stuffed as "@ ESC". The FCS covers the payload as sent: the data,
+ * after FEC coding if the format has it, and in fixed frames the padding with the data
+ * length at its end.
+ */
+public final class FrameEncoder {
+    public static final int DEFAULT_DATA_LENGTH = 8;
+
+    static final byte FLAG_START = '@';
+    static final byte FLAG_END = 'h';
+    static final byte ESCAPE = 0x00; // '00' character
+    static final byte ESCAPE_MASK = 0x1B; // 'ESC' character
+
+    private final FrameFormat format;
+    private byte[] scratch; // For isAmbiguous
+
+    public FrameEncoder(int dataLength) {
+        this(FrameFormat.fixed(dataLength));
+    }
+
+    public FrameEncoder(FrameFormat format) {
+        this.format = format;
+    }
+
+    public FrameFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Data bytes per frame.
+     */
+    public int getDataLength() {
+        return format.getDataCapacity();
+    }
+
+    /**
+     * Longest frame this encoder produces; the length of every frame in the fixed format.
+     */
+    public int getFrameLength() {
+        return format.getMaxFrameLength();
+    }
+
+    public byte[] encode(byte[] data, int offset, int length, int destination, int source) {
+        byte[] packet = new byte[format.getFrameLength(length)];
+        encodeInto(packet, 0, data, offset, length, destination, source);
+        return packet;
+    }
+
+    /**
+     * Writes one stuffed frame into {@code target} at {@code targetOffset}. Stuffing keeps
+     * the length, so the frame takes {@link FrameFormat#getFrameLength(int)} bytes and is
+     * built in place without intermediate arrays.
+     *
+     * @return the frame length
+     */
+    public int encodeInto(byte[] target, int targetOffset, byte[] data, int offset, int length, int destination, int source) {
+        int fcsIndex = layOut(target, targetOffset, data, offset, length, destination, source);
+        stuffInPlace(target, targetOffset + 2, fcsIndex - targetOffset - 2);
+        return fcsIndex + 1 - targetOffset;
+    }
+
+    /**
+     * Whether the receiver could get the data of this frame wrong even with the line
+     * leaving it alone: the frame holds "@ ESC" before stuffing, which the receiver cannot
+     * tell from a stuffed "@h" and turns into one. Binary data that has to arrive exactly
+     * is cut differently instead.
+     */
+    public boolean isAmbiguous(byte[] data, int offset, int length, int destination, int source) {
+        if (scratch == null) {
+            scratch = new byte[getFrameLength()];
+        }
+        int fcsIndex = layOut(scratch, 0, data, offset, length, destination, source);
+        return containsEscapePair(scratch, 2, fcsIndex - 2);
+    }
+
+    // The frame before stuffing; returns the index of the FCS
+    private int layOut(byte[] target, int targetOffset, byte[] data, int offset, int length, int destination, int source) {
+        if (length > format.getDataCapacity()) {
+            throw new IllegalArgumentException("Payload of " + length + " bytes exceeds " + format);
+        }
+        int body = targetOffset + 2;
+        int payload = body + format.getHeaderLength();
+        int fcsIndex = targetOffset + format.getFrameLength(length) - 1;
+        int wireLength = format.getWireLength(length);
+        boolean padded = payload + wireLength < fcsIndex;
+        target[targetOffset] = FLAG_START;
+        target[targetOffset + 1] = FLAG_END;
+        target[body] = (byte) (format.isFec() ? destination | FrameFormat.FEC_FLAG : destination);
+        target[body + 1] = (byte) (padded ? source & FrameFormat.SOURCE_MASK | FrameFormat.PADDED_FLAG : source & FrameFormat.SOURCE_MASK);
+        if (!format.isFec()) {
+            System.arraycopy(data, offset, target, payload, length);
+        } else {
+            Hamming.encode(data, offset, length, target, payload);
+        }
+        if (format.isVariableLength()) {
+            target[body + 2] = (byte) wireLength;
+        }
+        if (padded) {
+            Arrays.fill(target, payload + wireLength, fcsIndex - 1, (byte) 0);
+            target[fcsIndex - 1] = (byte) length; // Fits, as the payload is at most 255 bytes
+        }
+        target[fcsIndex] = Fcs.calculate(target, payload, fcsIndex - payload); // Before stuffing, so the same as over the data
+        return fcsIndex;
+    }
+
+    private static boolean containsEscapePair(byte[] buffer, int offset, int length) {
+        for (int i = offset, last = offset + length - 1; i < last; i++) {
+            if (buffer[i] == (FLAG_START ^ ESCAPE) && buffer[i + 1] == ESCAPE_MASK) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Replaces every "@h" in the range with "@ ESC". The length does not change.
+     */
+    public static void stuffInPlace(byte[] buffer, int offset, int length) {
+        for (int i = offset, last = offset + length - 1; i < last; i++) {
+            if (buffer[i] == FLAG_START && buffer[i + 1] == FLAG_END) {
+                buffer[i] = FLAG_START ^ ESCAPE;
+                buffer[i + 1] = ESCAPE_MASK;
+                i++; // Пропустить следующий символ, так как он является частью последовательности
+            }
+        }
+    }
+
+    /**
+     * Reverse of {@link #stuffInPlace}: replaces every "@ ESC" in the range with "@h".
+     */
+    public static void unstuffInPlace(byte[] buffer, int offset, int length) {
+        for (int i = offset, last = offset + length - 1; i < last; i++) {
+            if (buffer[i] == (FLAG_START ^ ESCAPE) && buffer[i + 1] == ESCAPE_MASK) {
+                buffer[i] = FLAG_START;
+                buffer[i + 1] = FLAG_END;
+                i++; // Skip the next character as it is part of the sequence
+            }
+        }
+    }
+
+    public static byte[] stuff(byte[] data) {
+        ByteArrayOutputStream stuffedData = new ByteArrayOutputStream();
+        for (int i = 0; i < data.length; i++) {
+            if (data[i] == FLAG_START && i + 1 < data.length && data[i + 1] == FLAG_END) {
+                stuffedData.write(FLAG_START ^ ESCAPE);
+                stuffedData.write(ESCAPE_MASK);
+                i++; // Пропустить следующий символ, так как он является частью последовательности
+            } else {
+                stuffedData.write(data[i]);
+            }
+        }
+        return stuffedData.toByteArray();
+    }
+
+    /**
+     * Unstuffs the addresses and data of a whole packet, i.e. everything between the FLAG
+     * and the FCS. {@link FrameDecoder} does the same incrementally on a byte stream.
+     */
+    public static byte[] destuff(byte[] packet) {
+        ByteArrayOutputStream unstuffedData = new ByteArrayOutputStream();
+        for (int i = 2, end = packet.length - 1; i < end; i++) {
+            if (i < end - 1 && packet[i] == (FLAG_START ^ ESCAPE) && packet[i + 1] == ESCAPE_MASK) {
+                unstuffedData.write(FLAG_START);
+                unstuffedData.write(FLAG_END);
+                i++; // Skip the next character as it is part of the sequence
+            } else {
+                unstuffedData.write(packet[i]);
+            }
+        }
+        return unstuffedData.toByteArray();
+    }
+
+    public static String describe(byte[] packet) {
+        return describe(packet, 0, packet.length);
+    }
+
+    public static String describe(byte[] buffer, int offset, int length) {
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < length; i++) {
+            byte b = buffer[offset + i];
+            if (i < 2) {
+                sb.append((char) b); // Convert first 2 bytes to characters
+            } else if (i < 4) {
+                sb.append(b & 0xFF); // Convert 3rd and 4th bytes to decimal
+            } else {
+                if (i < length - 1 && b == (FLAG_START ^ ESCAPE) && buffer[offset + i + 1] == ESCAPE_MASK) {
+                    sb.append("[0x").append(String.format("%02X", ESCAPE)).append(" 0x").append(String.format("%02X", ESCAPE_MASK)).append("]");
+                    i++; // Skip the next character as it is part of the sequence
+                } else {
+                    if (i == length - 1) {
+                        if (Character.isISOControl(b) || !Character.isDefined(b) || b == ' ' || b == '\n') {
+                            sb.append(" \u0080"); // Placeholder for non-printable characters
+                        } else {
+                            sb.append(" ").append((char) b); // Convert FCS byte to character and separate with a space
+                        }
+                    } else {
+                        if ((b & 0xFF) == 0) {
+                            sb.append((b & 0xFF)); // Convert remaining bytes to decimal if value is 00
+                        } else {
+                            sb.append(b >= 0 ? (char) b : '\uFFFD'); // Convert remaining bytes to characters; part of a multi-byte one shows as U+FFFD
+                        }
+                    }
+                }
+            }
+        }
+        return sb.toString().trim(); // Remove the trailing space
+    }
+}
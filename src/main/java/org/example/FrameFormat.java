@@ -0,0 +1,126 @@
+package org.example;
+
+/**
+ * Layout of the frames on a link. Fixed frames always carry the full payload size:
+ * FLAG, destination, source, data, FCS. One with less data than that is zero padded,
+ * the last byte of the padding holds the data length and the source byte is marked with
+ * {@link #PADDED_FLAG}, so the receiver never has to guess where the data ends. Variable
+ * frames add a length byte after the addresses and carry only the bytes actually sent:
+ * FLAG, destination, source, length, data, FCS. Both ends must use the same format.
+ * The FCS covers the whole payload as sent.
+ *
+ * With FEC the data is sent Hamming(12,8) coded, in the same payload space, so a frame
+ * carries two thirds as much. The sender marks such frames with {@link #FEC_FLAG} in the
+ * destination byte, so a receiver decodes them whether or not it sends with FEC itself.
+ * Frames of a compressed session are marked with {@link #COMPRESSED_FLAG} the same way,
+ * see {@link Compressor}; addresses are therefore 0..63.
+ *
+ * Destination {@link #BROADCAST} is for every endpoint on the line, and is what senders
+ * use unless told otherwise; receivers can leave frames for other addresses undecoded,
+ * see {@link FrameRouter}. Sources are 0..127, the top bit of the source byte being
+ * {@link #PADDED_FLAG}.
+ */
+public final class FrameFormat {
+    public static final int MAX_PAYLOAD = 255;
+    public static final int FEC_FLAG = 0x80;
+    public static final int COMPRESSED_FLAG = 0x40;
+    public static final int PADDED_FLAG = 0x80; // In the source byte
+    public static final int SOURCE_MASK = 0x7F;
+    public static final int ADDRESS_MASK = 0x3F;
+    public static final int MAX_ADDRESS = ADDRESS_MASK;
+    public static final int BROADCAST = 0;
+
+    private final boolean variableLength;
+    private final int payloadSize;
+    private final boolean fec;
+
+    private FrameFormat(boolean variableLength, int payloadSize, boolean fec) {
+        if (payloadSize < 1 || payloadSize > MAX_PAYLOAD) {
+            throw new IllegalArgumentException("Payload size must be 1.." + MAX_PAYLOAD + ": " + payloadSize);
+        }
+        if (fec && Hamming.decodedLength(payloadSize) < 1) {
+            throw new IllegalArgumentException("Payload size too small for FEC: " + payloadSize);
+        }
+        this.variableLength = variableLength;
+        this.payloadSize = payloadSize;
+        this.fec = fec;
+    }
+
+    /**
+     * @throws IllegalArgumentException if the address does not fit the destination byte
+     */
+    public static int checkAddress(int address) {
+        if (address < 0 || address > MAX_ADDRESS) {
+            throw new IllegalArgumentException("Address must be 0.." + MAX_ADDRESS + ": " + address);
+        }
+        return address;
+    }
+
+    public static FrameFormat fixed(int payloadSize) {
+        return new FrameFormat(false, payloadSize, false);
+    }
+
+    public static FrameFormat variable(int maxPayloadSize) {
+        return new FrameFormat(true, maxPayloadSize, false);
+    }
+
+    /**
+     * The same layout with the data Hamming(12,8) coded.
+     */
+    public FrameFormat withFec(boolean fec) {
+        return fec == this.fec ? this : new FrameFormat(variableLength, payloadSize, fec);
+    }
+
+    public boolean isFec() {
+        return fec;
+    }
+
+    public boolean isVariableLength() {
+        return variableLength;
+    }
+
+    /**
+     * Payload bytes per fixed frame, or the most a variable frame may carry; with FEC
+     * this is the coded size.
+     */
+    public int getPayloadSize() {
+        return payloadSize;
+    }
+
+    /**
+     * Data bytes a frame carries once coded; the payload size without FEC.
+     */
+    public int getDataCapacity() {
+        return fec ? Hamming.decodedLength(payloadSize) : payloadSize;
+    }
+
+    /**
+     * Bytes the given data takes in the payload of a frame.
+     */
+    public int getWireLength(int dataLength) {
+        return fec ? Hamming.encodedLength(dataLength) : dataLength;
+    }
+
+    /**
+     * Stuffed part of the frame before the data: addresses and, if variable, the length.
+     */
+    public int getHeaderLength() {
+        return variableLength ? 3 : 2;
+    }
+
+    /**
+     * @param dataLength data bytes in the frame, at most {@link #getDataCapacity()}
+     */
+    public int getFrameLength(int dataLength) {
+        return 2 + getHeaderLength() + (variableLength ? getWireLength(dataLength) : payloadSize) + 1;
+    }
+
+    public int getMaxFrameLength() {
+        return getFrameLength(getDataCapacity());
+    }
+
+    @Override
+    public String toString() {
+        return (variableLength ? "variable" : "fixed") + " frames, payload " + payloadSize + (fec ? ", Hamming(12,8)" : "");
+    }
+}
@@ -0,0 +1,83 @@
+package org.example;
+
+import java.util.Arrays;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Routing table for the logical endpoints sharing one port: frames go to the handler or
+ * queue of their destination address, and {@link FrameFormat#BROADCAST} frames to every
+ * route. A {@link ReceiverSession} built with a router has its decoder skip frames for
+ * addresses without a route, so each endpoint only costs the frames meant for it.
+ *
+ * Routes can be added and removed while frames come in; a change reaches the decoder
+ * with the next bytes read. Handlers are called on the reader thread, with the data
+ * valid only for the call, as for any {@link FrameDecoder.Handler}.
+ */
+public final class FrameRouter implements FrameDecoder.Handler {
+    private final LinkMetrics metrics = LinkMetrics.global();
+    private volatile FrameDecoder.Handler[] routes = new FrameDecoder.Handler[FrameFormat.MAX_ADDRESS + 1]; // Copied on write
+    private volatile long addresses = 1L << FrameFormat.BROADCAST; // Routed addresses, and broadcasts always
+
+    /**
+     * Sends frames for the address to the handler, in place of any route it had.
+     */
+    public synchronized void route(int address, FrameDecoder.Handler handler) {
+        FrameFormat.checkAddress(address);
+        FrameDecoder.Handler[] updated = Arrays.copyOf(routes, routes.length);
+        updated[address] = handler;
+        routes = updated;
+        addresses |= 1L << address;
+    }
+
+    /**
+     * Queues frames for the address, copied, for a consumer on another thread; when the
+     * queue is full further frames are dropped rather than stall the port.
+     */
+    public BlockingQueue<Frame> routeToQueue(int address, int capacity) {
+        BlockingQueue<Frame> queue = new ArrayBlockingQueue<>(capacity);
+        route(address, (destination, source, buffer, offset, length, fcs) -> {
+            if (!queue.offer(new Frame(destination, source, Arrays.copyOfRange(buffer, offset, offset + length), fcs))) {
+                metrics.frameDropped();
+            }
+        });
+        return queue;
+    }
+
+    public synchronized void remove(int address) {
+        FrameFormat.checkAddress(address);
+        FrameDecoder.Handler[] updated = Arrays.copyOf(routes, routes.length);
+        updated[address] = null;
+        routes = updated;
+        if (address != FrameFormat.BROADCAST) {
+            addresses &= ~(1L << address);
+        }
+    }
+
+    /**
+     * The addresses to decode, as a mask for {@link FrameDecoder#setAcceptedAddresses}.
+     */
+    public long getAddresses() {
+        return addresses;
+    }
+
+    @Override
+    public void onFrame(int destination, int source, byte[] buffer, int offset, int length, byte fcs) {
+        FrameDecoder.Handler[] table = routes;
+        int address = destination & FrameFormat.ADDRESS_MASK;
+        if (address != FrameFormat.BROADCAST) {
+            FrameDecoder.Handler handler = table[address];
+            if (handler != null) {
+                handler.onFrame(destination, source, buffer, offset, length, fcs);
+            } else {
+                metrics.frameDropped(); // Its route was removed after the decoder let it through
+            }
+            return;
+        }
+        for (FrameDecoder.Handler handler : table) {
+            if (handler != null) {
+                handler.onFrame(destination, source, buffer, offset, length, fcs);
+            }
+        }
+    }
+}
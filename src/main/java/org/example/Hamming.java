@@ -0,0 +1,128 @@
+package org.example;
+
+/**
+ * Table-driven Hamming(12,8) forward error correction. Each data byte becomes a 12-bit
+ * codeword that survives any single flipped bit; two codewords are packed into three
+ * bytes, and an odd last one takes two bytes. Codewords are corrected independently,
+ * so a frame survives one flipped bit per data byte, but not two in the same codeword.
+ */
+public final class Hamming {
+    private static final int OK = 0;
+    private static final int CORRECTED = 1 << 8;
+    private static final int UNCORRECTABLE = 2 << 8;
+    private static final int[] DATA_POSITIONS = {3, 5, 6, 7, 9, 10, 11, 12}; // Codeword positions 1..12, parity at 1, 2, 4, 8
+
+    private static final short[] ENCODE = new short[256];
+    private static final short[] DECODE = new short[1 << 12]; // Codeword -> data byte | status
+
+    static {
+        for (int data = 0; data < 256; data++) {
+            int word = 0;
+            int syndrome = 0;
+            for (int i = 0; i < 8; i++) {
+                if ((data & (0x80 >>> i)) != 0) {
+                    word |= bit(DATA_POSITIONS[i]);
+                    syndrome ^= DATA_POSITIONS[i];
+                }
+            }
+            for (int parity = 1; parity <= 8; parity <<= 1) {
+                if ((syndrome & parity) != 0) {
+                    word |= bit(parity);
+                }
+            }
+            ENCODE[data] = (short) word;
+        }
+        for (int word = 0; word < DECODE.length; word++) {
+            int syndrome = 0;
+            for (int position = 1; position <= 12; position++) {
+                if ((word & bit(position)) != 0) {
+                    syndrome ^= position;
+                }
+            }
+            int status = OK;
+            int fixed = word;
+            if (syndrome > 12) {
+                status = UNCORRECTABLE;
+            } else if (syndrome != 0) {
+                status = CORRECTED;
+                fixed ^= bit(syndrome);
+            }
+            int data = 0;
+            for (int i = 0; i < 8; i++) {
+                if ((fixed & bit(DATA_POSITIONS[i])) != 0) {
+                    data |= 0x80 >>> i;
+                }
+            }
+            DECODE[word] = (short) (data | status);
+        }
+    }
+
+    private Hamming() {
+    }
+
+    public static int encodedLength(int dataLength) {
+        return (dataLength * 3 + 1) / 2;
+    }
+
+    /**
+     * Data bytes carried by {@code encodedLength} coded bytes; also the most data that
+     * fits in that many bytes once coded.
+     */
+    public static int decodedLength(int encodedLength) {
+        return encodedLength * 2 / 3;
+    }
+
+    /**
+     * @return number of bytes written to {@code target}
+     */
+    public static int encode(byte[] data, int offset, int length, byte[] target, int targetOffset) {
+        int out = targetOffset;
+        int i = offset;
+        for (int end = offset + length - 1; i < end; i += 2) {
+            int first = ENCODE[data[i] & 0xFF];
+            int second = ENCODE[data[i + 1] & 0xFF];
+            target[out++] = (byte) (first >>> 4);
+            target[out++] = (byte) ((first << 4) | (second >>> 8));
+            target[out++] = (byte) second;
+        }
+        if (i < offset + length) {
+            int last = ENCODE[data[i] & 0xFF];
+            target[out++] = (byte) (last >>> 4);
+            target[out++] = (byte) (last << 4);
+        }
+        return out - targetOffset;
+    }
+
+    /**
+     * Decodes in place: the {@link #decodedLength} data bytes end up at {@code offset}.
+     *
+     * @return number of codewords corrected, or -1 if any had an error it could only detect
+     */
+    public static int decode(byte[] buffer, int offset, int length) {
+        int count = decodedLength(length);
+        int in = offset;
+        int corrected = 0;
+        boolean uncorrectable = false;
+        for (int i = 0; i < count; i++) {
+            int word;
+            if ((i & 1) == 0) {
+                word = ((buffer[in] & 0xFF) << 4) | ((buffer[in + 1] & 0xFF) >>> 4);
+            } else {
+                word = ((buffer[in + 1] & 0x0F) << 8) | (buffer[in + 2] & 0xFF);
+                in += 3;
+            }
+            int decoded = DECODE[word];
+            buffer[offset + i] = (byte) decoded; // Never ahead of what is still to be read
+            if ((decoded & CORRECTED) != 0) {
+                corrected++;
+            } else if ((decoded & UNCORRECTABLE) != 0) {
+                uncorrectable = true;
+            }
+        }
+        return uncorrectable ? -1 : corrected;
+    }
+
+    private static int bit(int position) {
+        return 1 << (12 - position);
+    }
+}
@@ -0,0 +1,287 @@
+package org.example;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Queries a {@link ReceiveJournal} directory, while it is being written or after. Each
+ * query lists the segments afresh, skips those wholly before the range it asks for and
+ * seeks into the first one through its index, then reads on through a read-only mapping
+ * until the range ends. Sequence numbers and times only grow, so both end a scan early.
+ */
+public final class JournalReader {
+    private final Path directory;
+
+    /**
+     * What to look for; every record by default. Immutable, so a query can be kept and
+     * narrowed further.
+     */
+    public static final class Query {
+        public static final Query ALL = new Query(0, Long.MAX_VALUE, Long.MIN_VALUE, Long.MAX_VALUE, -1, -1, null, Integer.MAX_VALUE);
+
+        private final long fromSequence;
+        private final long toSequence; // Inclusive
+        private final long fromMillis;
+        private final long toMillis; // Inclusive
+        private final int source; // -1 for any
+        private final int destination; // -1 for any
+        private final byte[] text; // Null for any
+        private final int limit;
+
+        private Query(long fromSequence, long toSequence, long fromMillis, long toMillis, int source, int destination, byte[] text, int limit) {
+            this.fromSequence = fromSequence;
+            this.toSequence = toSequence;
+            this.fromMillis = fromMillis;
+            this.toMillis = toMillis;
+            this.source = source;
+            this.destination = destination;
+            this.text = text;
+            this.limit = limit;
+        }
+
+        /**
+         * Records numbered from..to, both included.
+         */
+        public Query withSequences(long from, long to) {
+            return new Query(from, to, fromMillis, toMillis, source, destination, text, limit);
+        }
+
+        /**
+         * Records received from..to, in epoch milliseconds, both included.
+         */
+        public Query withTimes(long from, long to) {
+            return new Query(fromSequence, toSequence, from, to, source, destination, text, limit);
+        }
+
+        public Query withSource(int source) {
+            return new Query(fromSequence, toSequence, fromMillis, toMillis, source, destination, text, limit);
+        }
+
+        public Query withDestination(int destination) {
+            return new Query(fromSequence, toSequence, fromMillis, toMillis, source, destination, text, limit);
+        }
+
+        /**
+         * Records whose data holds the text in UTF-8; text split across records is not found.
+         */
+        public Query withText(String text) {
+            return new Query(fromSequence, toSequence, fromMillis, toMillis, source, destination,
+                    text != null && !text.isEmpty() ? text.getBytes(StandardCharsets.UTF_8) : null, limit);
+        }
+
+        /**
+         * At most this many records, the first that match.
+         */
+        public Query withLimit(int limit) {
+            return new Query(fromSequence, toSequence, fromMillis, toMillis, source, destination, text, limit);
+        }
+
+        private boolean matches(int recordDestination, int recordSource, ByteBuffer data, int offset, int length) {
+            return (source < 0 || recordSource == source) && (destination < 0 || recordDestination == destination)
+                    && (text == null || indexOf(data, offset, length, text) >= 0);
+        }
+    }
+
+    /**
+     * Gets the matching records in order; return false to stop.
+     */
+    public interface Visitor {
+        boolean onRecord(JournalRecord record) throws IOException;
+    }
+
+    public JournalReader(Path directory) {
+        this.directory = directory;
+    }
+
+    public List<JournalRecord> query(Query query) throws IOException {
+        List<JournalRecord> records = new ArrayList<>();
+        forEach(query, records::add);
+        return records;
+    }
+
+    public void forEach(Query query, Visitor visitor) throws IOException {
+        List<Long> segments = segments(directory);
+        int matched = 0;
+        for (int i = 0; i < segments.size() && matched < query.limit; i++) {
+            long first = segments.get(i);
+            if (first > query.toSequence) {
+                return;
+            }
+            if (i + 1 < segments.size() && segments.get(i + 1) <= query.fromSequence) {
+                continue; // All of it comes before the range
+            }
+            Index index = Index.read(directory.resolve(fileName(first, ReceiveJournal.INDEX_SUFFIX)));
+            if (i + 1 < segments.size() && index.count > 0) {
+                Index next = Index.read(directory.resolve(fileName(segments.get(i + 1), ReceiveJournal.INDEX_SUFFIX)));
+                if (next.count > 0 && next.millis[0] < query.fromMillis) {
+                    continue; // Everything in it is older than that
+                }
+            }
+            int scanned = scan(first, index, query, visitor, query.limit - matched);
+            if (scanned < 0) {
+                return; // Past the range, or the visitor had enough
+            }
+            matched += scanned;
+        }
+    }
+
+    // Returns the number of matches, or -1 if the scan should not go on to the next segment
+    private int scan(long first, Index index, Query query, Visitor visitor, int limit) throws IOException {
+        Path file = directory.resolve(fileName(first, ReceiveJournal.SEGMENT_SUFFIX));
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < ReceiveJournal.HEADER_LENGTH || size > Integer.MAX_VALUE) {
+                return 0;
+            }
+            MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            if (map.getInt(0) != ReceiveJournal.MAGIC || map.getInt(4) != ReceiveJournal.VERSION) {
+                return 0;
+            }
+            int matched = 0;
+            int position = Math.max(ReceiveJournal.HEADER_LENGTH, index.seek(query.fromSequence, query.fromMillis));
+            long expected = -1;
+            while (position + ReceiveJournal.RECORD_HEADER_LENGTH <= size) {
+                long sequence = map.getLong(position);
+                long millis = map.getLong(position + 8);
+                int length = map.getInt(position + 19);
+                if (length < 0 || position + ReceiveJournal.RECORD_HEADER_LENGTH + length > size
+                        || expected >= 0 && sequence != expected) {
+                    return matched; // Cut short by a crash, or still being written
+                }
+                expected = sequence + 1;
+                if (sequence > query.toSequence || millis > query.toMillis) {
+                    return -1;
+                }
+                int destination = map.get(position + 16) & 0xFF;
+                int source = map.get(position + 17) & 0xFF;
+                int data = position + ReceiveJournal.RECORD_HEADER_LENGTH;
+                if (sequence >= query.fromSequence && millis >= query.fromMillis && query.matches(destination, source, map, data, length)) {
+                    byte[] bytes = new byte[length];
+                    map.position(data);
+                    map.get(bytes);
+                    matched++;
+                    if (!visitor.onRecord(new JournalRecord(sequence, millis, destination, source, map.get(position + 18), bytes)) || matched == limit) {
+                        return -1;
+                    }
+                }
+                position = data + length;
+            }
+            return matched;
+        } catch (NoSuchFileException e) {
+            return 0; // Deleted by the writer's retention since it was listed
+        }
+    }
+
+    /**
+     * First sequence numbers of the segments in the directory, oldest first.
+     */
+    static List<Long> segments(Path directory) throws IOException {
+        List<Long> segments = new ArrayList<>();
+        if (!Files.isDirectory(directory)) {
+            return segments;
+        }
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "*" + ReceiveJournal.SEGMENT_SUFFIX)) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                try {
+                    segments.add(Long.parseLong(name.substring(0, name.length() - ReceiveJournal.SEGMENT_SUFFIX.length())));
+                } catch (NumberFormatException e) {
+                    // Not one of ours
+                }
+            }
+        }
+        Collections.sort(segments);
+        return segments;
+    }
+
+    /**
+     * Sequence of the last complete record in the segment, or the one before its first if
+     * it has none.
+     */
+    static long lastSequence(Path directory, long first) throws IOException {
+        long[] last = {first - 1};
+        Index index = Index.read(directory.resolve(fileName(first, ReceiveJournal.INDEX_SUFFIX)));
+        long from = index.count > 0 ? index.sequences[index.count - 1] : first;
+        new JournalReader(directory).scan(first, index, Query.ALL.withSequences(from, Long.MAX_VALUE), record -> {
+            last[0] = record.getSequence();
+            return true;
+        }, Integer.MAX_VALUE);
+        return last[0];
+    }
+
+    static String fileName(long firstSequence, String suffix) {
+        return String.format("%020d%s", firstSequence, suffix);
+    }
+
+    private static int indexOf(ByteBuffer data, int offset, int length, byte[] text) {
+        outer:
+        for (int i = offset, last = offset + length - text.length; i <= last; i++) {
+            for (int j = 0; j < text.length; j++) {
+                if (data.get(i + j) != text[j]) {
+                    continue outer;
+                }
+            }
+            return i - offset;
+        }
+        return -1;
+    }
+
+    // Sparse index of one segment, read whole; what a crash left half written is ignored
+    private static final class Index {
+        final long[] sequences;
+        final long[] millis;
+        final int[] offsets;
+        final int count;
+
+        private Index(int count) {
+            this.sequences = new long[count];
+            this.millis = new long[count];
+            this.offsets = new int[count];
+            this.count = count;
+        }
+
+        static Index read(Path file) throws IOException {
+            ByteBuffer bytes;
+            try {
+                bytes = ByteBuffer.wrap(Files.readAllBytes(file));
+            } catch (NoSuchFileException e) {
+                return new Index(0); // Scanned from the start instead
+            }
+            Index index = new Index(bytes.remaining() / ReceiveJournal.INDEX_ENTRY_LENGTH);
+            for (int i = 0; i < index.count; i++) {
+                index.sequences[i] = bytes.getLong();
+                index.millis[i] = bytes.getLong();
+                index.offsets[i] = bytes.getInt();
+            }
+            return index;
+        }
+
+        // Offset of the last entry before both the sequence and the time, or 0 for the start
+        int seek(long sequence, long time) {
+            int low = 0;
+            int high = count - 1;
+            int found = -1;
+            while (low <= high) {
+                int middle = (low + high) >>> 1;
+                if (sequences[middle] <= sequence && (time == Long.MIN_VALUE || millis[middle] < time)) {
+                    found = middle;
+                    low = middle + 1;
+                } else {
+                    high = middle - 1;
+                }
+            }
+            return found < 0 ? 0 : offsets[found];
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package org.example;
+
+import java.nio.charset.StandardCharsets;
+import java.text.SimpleDateFormat;
+import java.util.Date;
+
+/**
+ * One received piece of data as kept by a {@link ReceiveJournal}: the frame's data, or
+ * what it inflated to, with where and when it came from.
+ */
+public final class JournalRecord {
+    private final long sequence;
+    private final long timeMillis;
+    private final int destination;
+    private final int source;
+    private final int flags;
+    private final byte[] data;
+
+    public JournalRecord(long sequence, long timeMillis, int destination, int source, int flags, byte[] data) {
+        this.sequence = sequence;
+        this.timeMillis = timeMillis;
+        this.destination = destination;
+        this.source = source;
+        this.flags = flags;
+        this.data = data;
+    }
+
+    /**
+     * Position in the journal, counting from 0 and never reused.
+     */
+    public long getSequence() {
+        return sequence;
+    }
+
+    /**
+     * When it was received, in epoch milliseconds; never less than that of the record before.
+     */
+    public long getTimeMillis() {
+        return timeMillis;
+    }
+
+    public int getDestination() {
+        return destination;
+    }
+
+    public int getSource() {
+        return source;
+    }
+
+    /**
+     * {@link ReceiveJournal#CORRECTED}, {@link ReceiveJournal#CORRUPT} and
+     * {@link ReceiveJournal#COMPRESSED} as they apply.
+     */
+    public int getFlags() {
+        return flags;
+    }
+
+    /**
+     * Errors in the frame were corrected, by FEC or the FCS.
+     */
+    public boolean isCorrected() {
+        return (flags & ReceiveJournal.CORRECTED) != 0;
+    }
+
+    /**
+     * The FCS did not match and the errors could not be corrected.
+     */
+    public boolean isCorrupt() {
+        return (flags & ReceiveJournal.CORRUPT) != 0;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    /**
+     * One line, such as "#12 2024-05-01 12:00:00.250 3->1 corrected: text", with control
+     * characters shown as dots.
+     */
+    @Override
+    public String toString() {
+        return "#" + sequence + " " + new SimpleDateFormat("yyyy-MM-dd HH:mm:ss.SSS").format(new Date(timeMillis))
+                + " " + source + "->" + destination + (isCorrected() ? " corrected" : isCorrupt() ? " corrupt" : "") + ": "
+                + new String(data, StandardCharsets.UTF_8).replaceAll("\\p{Cntrl}", ".");
+    }
+}
@@ -0,0 +1,185 @@
+package org.example;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+/**
+ * Finds the fastest line setting two ends of a cable agree on. Both ends are set to each
+ * candidate in turn, fastest first and without flow control before RTS/CTS and
+ * XON/XOFF, and a test pattern is sent both ways; the first candidate that gets every
+ * pattern across intact, and about as fast as its speed says, wins, with timeouts that
+ * follow that speed. A line that cannot keep up, such as a paced loopback, fails on time.
+ *
+ * The pattern has every byte value and the byte stuffing sequences in it, since a frame
+ * may carry any of them. XON/XOFF eats 0x11 and 0x13 and so only passes on a line that
+ * does not really do it, such as a loopback.
+ *
+ * Both ends have to be open in this process and without a session on them: the probe
+ * reads their input itself.
+ */
+public final class LineProbe {
+    static final int[] BAUD_RATES = {921600, 460800, 230400, 115200, 57600, 38400, 19200, 9600};
+    private static final int ROUNDS = 2; // Patterns each way per candidate
+    private static final long SETTLE_MS = 50; // After switching, for the driver and whatever was on the line
+    private static final long SLACK_MS = 200; // On top of the time the pattern takes on the line
+    private static final byte[] PATTERN = pattern();
+
+    /**
+     * Told about each candidate as it is tried.
+     */
+    public interface Listener {
+        void onTried(LineSettings settings, boolean clean);
+    }
+
+    private LineProbe() {
+    }
+
+    /**
+     * Tries the candidates on both ends and leaves them set to the one found.
+     *
+     * @param base character format of the line; its speed and flow control are probed
+     * @return the fastest clean setting, or null if none was, in which case both ends are
+     * back on {@code base}
+     */
+    public static LineSettings probe(Transport first, Transport second, LineSettings base, Listener listener) throws IOException {
+        for (int baudRate : BAUD_RATES) {
+            for (LineSettings.FlowControl flowControl : LineSettings.FlowControl.values()) {
+                LineSettings candidate = base.withBaudRate(baudRate).withFlowControl(flowControl);
+                boolean clean = first.setLineSettings(candidate) && second.setLineSettings(candidate)
+                        && exchange(first, second, candidate);
+                listener.onTried(candidate, clean);
+                if (clean) {
+                    return candidate;
+                }
+            }
+        }
+        first.setLineSettings(base);
+        second.setLineSettings(base);
+        return null;
+    }
+
+    private static boolean exchange(Transport first, Transport second, LineSettings settings) throws IOException {
+        sleep(SETTLE_MS);
+        discardInput(first);
+        discardInput(second);
+        Collector fromFirst = new Collector(second);
+        Collector fromSecond = new Collector(first);
+        second.setDataListener(fromFirst);
+        first.setDataListener(fromSecond);
+        try {
+            long deadline = System.currentTimeMillis() + 2 * settings.transferMillis(ROUNDS * PATTERN.length) + SLACK_MS;
+            for (int round = 0; round < ROUNDS; round++) {
+                write(first, PATTERN);
+                write(second, PATTERN);
+            }
+            return fromFirst.await(deadline) && fromSecond.await(deadline);
+        } finally {
+            first.removeDataListener();
+            second.removeDataListener();
+        }
+    }
+
+    private static void write(Transport transport, byte[] data) throws IOException {
+        OutputStream out = transport.getOutputStream();
+        out.write(data);
+        out.flush();
+    }
+
+    private static void discardInput(Transport transport) throws IOException {
+        InputStream in = transport.getInputStream();
+        byte[] scratch = new byte[256];
+        int available;
+        while ((available = transport.bytesAvailable()) > 0) {
+            if (in.read(scratch, 0, Math.min(available, scratch.length)) < 0) {
+                return;
+            }
+        }
+    }
+
+    private static void sleep(long millis) throws IOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while probing");
+        }
+    }
+
+    // Every byte value, then what the stuffing turns "@h" into and back
+    private static byte[] pattern() {
+        byte[] pattern = new byte[256 + 8];
+        for (int i = 0; i < 256; i++) {
+            pattern[i] = (byte) i;
+        }
+        byte[] stuffing = {'@', 'h', '@', 0x1B, '@', '@', 'h', 0x1B};
+        System.arraycopy(stuffing, 0, pattern, 256, stuffing.length);
+        return pattern;
+    }
+
+    // Runs on the reader thread of the receiving end
+    private static final class Collector implements Runnable {
+        private final Transport transport;
+        private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+        private final byte[] buffer = new byte[1024];
+        private boolean failed;
+        private long completedAt; // When the last expected byte came in
+
+        Collector(Transport transport) {
+            this.transport = transport;
+        }
+
+        @Override
+        public void run() {
+            try {
+                int available;
+                while ((available = transport.bytesAvailable()) > 0) {
+                    int count = transport.getInputStream().read(buffer, 0, Math.min(available, buffer.length));
+                    if (count < 0) {
+                        break;
+                    }
+                    synchronized (this) {
+                        received.write(buffer, 0, count);
+                        if (completedAt == 0 && received.size() >= (long) ROUNDS * PATTERN.length) {
+                            completedAt = System.currentTimeMillis();
+                        }
+                        notifyAll();
+                    }
+                }
+            } catch (IOException e) {
+                synchronized (this) {
+                    failed = true;
+                    notifyAll();
+                }
+            }
+        }
+
+        // True if all the patterns came in by the deadline, and nothing else
+        synchronized boolean await(long deadline) throws IOException {
+            long expected = (long) ROUNDS * PATTERN.length;
+            long left;
+            while (!failed && received.size() < expected && (left = deadline - System.currentTimeMillis()) > 0) {
+                try {
+                    wait(left);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException("Interrupted while probing");
+                }
+            }
+            if (failed || received.size() != expected || completedAt > deadline) {
+                return false;
+            }
+            byte[] data = received.toByteArray();
+            for (int round = 0; round < ROUNDS; round++) {
+                int from = round * PATTERN.length;
+                if (!Arrays.equals(Arrays.copyOfRange(data, from, from + PATTERN.length), PATTERN)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package org.example;
+
+import com.fazecast.jSerialComm.SerialPort;
+
+import java.util.Objects;
+
+/**
+ * Parameters of a serial line: speed, character format, flow control and the port
+ * timeouts. Timeouts left at 0 follow the speed, long enough for
+ * {@link #TIMEOUT_BYTES} characters, which at 9600 baud 8N1 is the one second the lab
+ * has always used. Loopback and pty transports keep the settings but have no line to
+ * apply them to.
+ */
+public final class LineSettings {
+    public static final LineSettings DEFAULT = new LineSettings(9600, 8, SerialPort.ONE_STOP_BIT, SerialPort.NO_PARITY, FlowControl.NONE, 0, 0);
+    static final int TIMEOUT_BYTES = 960;
+    private static final int MIN_TIMEOUT_MS = 20;
+
+    public enum FlowControl {
+        NONE("none", "no flow control", SerialPort.FLOW_CONTROL_DISABLED),
+        RTS_CTS("rtscts", "RTS/CTS", SerialPort.FLOW_CONTROL_RTS_ENABLED | SerialPort.FLOW_CONTROL_CTS_ENABLED),
+        XON_XOFF("xonxoff", "XON/XOFF", SerialPort.FLOW_CONTROL_XONXOFF_IN_ENABLED | SerialPort.FLOW_CONTROL_XONXOFF_OUT_ENABLED);
+
+        private final String key;
+        private final String label;
+        private final int flags;
+
+        FlowControl(String key, String label, int flags) {
+            this.key = key;
+            this.label = label;
+            this.flags = flags;
+        }
+
+        /**
+         * The value of FLOW_CONTROL in config.properties.
+         */
+        public String getKey() {
+            return key;
+        }
+
+        /**
+         * The flow control with the given key, or NONE.
+         */
+        public static FlowControl fromKey(String key) {
+            for (FlowControl flowControl : values()) {
+                if (flowControl.key.equalsIgnoreCase(key)) {
+                    return flowControl;
+                }
+            }
+            return NONE;
+        }
+
+        @Override
+        public String toString() {
+            return label;
+        }
+    }
+
+    private final int baudRate;
+    private final int dataBits;
+    private final int stopBits; // jSerialComm constant
+    private final int parity; // jSerialComm constant
+    private final FlowControl flowControl;
+    private final int readTimeoutMs; // 0 to follow the baud rate
+    private final int writeTimeoutMs;
+
+    public LineSettings(int baudRate, int dataBits, int stopBits, int parity, FlowControl flowControl, int readTimeoutMs, int writeTimeoutMs) {
+        if (baudRate <= 0) {
+            throw new IllegalArgumentException("Baud rate must be positive: " + baudRate);
+        }
+        if (dataBits < 5 || dataBits > 8) {
+            throw new IllegalArgumentException("Data bits must be 5..8: " + dataBits);
+        }
+        this.baudRate = baudRate;
+        this.dataBits = dataBits;
+        this.stopBits = stopBits;
+        this.parity = parity;
+        this.flowControl = flowControl;
+        this.readTimeoutMs = readTimeoutMs;
+        this.writeTimeoutMs = writeTimeoutMs;
+    }
+
+    /**
+     * The same line at another speed, with timeouts that follow it.
+     */
+    public LineSettings withBaudRate(int baudRate) {
+        return new LineSettings(baudRate, dataBits, stopBits, parity, flowControl, 0, 0);
+    }
+
+    public LineSettings withFlowControl(FlowControl flowControl) {
+        return new LineSettings(baudRate, dataBits, stopBits, parity, flowControl, readTimeoutMs, writeTimeoutMs);
+    }
+
+    public int getBaudRate() {
+        return baudRate;
+    }
+
+    public FlowControl getFlowControl() {
+        return flowControl;
+    }
+
+    /**
+     * Bits on the line per character: start, data, parity and stop bits.
+     */
+    public double getCharacterBits() {
+        double stop = stopBits == SerialPort.TWO_STOP_BITS ? 2 : stopBits == SerialPort.ONE_POINT_FIVE_STOP_BITS ? 1.5 : 1;
+        return 1 + dataBits + (parity == SerialPort.NO_PARITY ? 0 : 1) + stop;
+    }
+
+    /**
+     * How long the given number of characters take on the line.
+     */
+    public long transferMillis(int characters) {
+        return (long) Math.ceil(characters * getCharacterBits() * 1000 / baudRate);
+    }
+
+    public int getReadTimeoutMs() {
+        return readTimeoutMs > 0 ? readTimeoutMs : matchedTimeoutMs();
+    }
+
+    public int getWriteTimeoutMs() {
+        return writeTimeoutMs > 0 ? writeTimeoutMs : matchedTimeoutMs();
+    }
+
+    private int matchedTimeoutMs() {
+        return (int) Math.max(MIN_TIMEOUT_MS, transferMillis(TIMEOUT_BYTES));
+    }
+
+    /**
+     * Sets up the port, open or not; false if the driver refused part of it.
+     *
+     * @param timeoutMode jSerialComm timeout mode
+     */
+    public boolean applyTo(SerialPort port, int timeoutMode) {
+        boolean applied = port.setComPortParameters(baudRate, dataBits, stopBits, parity);
+        applied &= port.setFlowControl(flowControl.flags);
+        applied &= port.setComPortTimeouts(timeoutMode, getReadTimeoutMs(), getWriteTimeoutMs());
+        return applied;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (!(o instanceof LineSettings)) {
+            return false;
+        }
+        LineSettings other = (LineSettings) o;
+        return baudRate == other.baudRate && dataBits == other.dataBits && stopBits == other.stopBits && parity == other.parity
+                && flowControl == other.flowControl && readTimeoutMs == other.readTimeoutMs && writeTimeoutMs == other.writeTimeoutMs;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(baudRate, dataBits, stopBits, parity, flowControl, readTimeoutMs, writeTimeoutMs);
+    }
+
+    @Override
+    public String toString() {
+        String stop = stopBits == SerialPort.TWO_STOP_BITS ? "2" : stopBits == SerialPort.ONE_POINT_FIVE_STOP_BITS ? "1.5" : "1";
+        String parityName = parity == SerialPort.ODD_PARITY ? "odd" : parity == SerialPort.EVEN_PARITY ? "even"
+                : parity == SerialPort.MARK_PARITY ? "mark" : parity == SerialPort.SPACE_PARITY ? "space" : "no";
+        return "baud rate " + baudRate + ", data bits " + dataBits + ", stop bits " + stop + ", " + parityName + " parity"
+                + (flowControl != FlowControl.NONE ? ", " + flowControl + " flow control" : "");
+    }
+}
@@ -0,0 +1,658 @@
+package org.example;
+
+import com.fazecast.jSerialComm.SerialPort;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Paths;
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.BooleanSupplier;
+import java.util.function.Function;
+
+/**
+ * Headless runner for the link layer; nothing here touches AWT or Swing.
+ *
+ * <pre>
+ * send    &lt;port&gt; [inFile]                         stdin or file out through the port
+ * receive &lt;port&gt; [outFile]                        port to stdout or file until killed
+ * pump    &lt;sendPort&gt; &lt;receivePort&gt; [inFile] [outFile]  both ends in one process
+ * sendfile    &lt;port&gt; &lt;inFile&gt;                     a file of any size, streamed from a mapping
+ * receivefile &lt;port&gt; &lt;outFile&gt;                    one such file, written into a mapping
+ * pumpfile    &lt;sendPort&gt; &lt;receivePort&gt; &lt;inFile&gt; &lt;outFile&gt;  both ends in one process
+ * hub     &lt;inFile&gt; &lt;sendPort,receivePort&gt;...      the file over every pair at once
+ * mux     &lt;sendPort&gt; &lt;receivePort&gt; &lt;inFile&gt;...   each file to its own address over one pair
+ * replay  &lt;capture&gt; [fast|realtime] [rx|tx] [outFile]  a wire capture through the decoder
+ * probe   &lt;port&gt; &lt;otherPort&gt;                    the fastest setting the cable between them takes
+ * journal &lt;dir&gt; [from|since|source|dest|text|limit &lt;value&gt;]...  records from a receive journal
+ * </pre>
+ *
+ * Line parameters come from BAUD_RATE, DATA_BITS, STOP_BITS, PARITY, FLOW_CONTROL,
+ * READ_TIMEOUT_MS and WRITE_TIMEOUT_MS in config.properties, and open ports follow
+ * changes to them while sending or receiving; {@code probe} prints the values to put there.
+ *
+ * Set CAPTURE_DIR in config.properties to record every opened port for {@code replay}.
+ *
+ * Set ARQ_WINDOW in config.properties for reliable, in-order delivery with
+ * selective-repeat ARQ on {@code send}, {@code receive} and {@code pump}; the receiving
+ * end then answers over its own port, so that link has to work both ways.
+ *
+ * Set COMPRESSION=deflate in config.properties to deflate what is sent over ARQ;
+ * receivers inflate it without being told. Senders report how far it shrank.
+ *
+ * {@code mux} sends the n-th file to address n and routes each address on the receiving
+ * port into {@code <inFile>.received}; it does not use ARQ, which runs point to point.
+ *
+ * Set JOURNAL_DIR in config.properties to keep what {@code receive} and {@code pump}
+ * receive on disk, in a directory per port such as {@code journal/loop_1}, see
+ * {@link ReceiveJournal}; {@code journal} reads one back, from a sequence number or a
+ * time such as {@code 2024-05-01T12:00:00}.
+ *
+ * Set STATS_INTERVAL_MS in config.properties for a periodic statistics line on stderr;
+ * the same counters are always available over JMX as {@value LinkMetrics#OBJECT_NAME}.
+ *
+ * Port names are as for {@link LinkPorts#open}: {@code COM3}, {@code loop:0},
+ * {@code pty:/dev/pts/3}. Pumping {@code loop:0} to {@code loop:1} needs no hardware.
+ */
+public final class LinkCli {
+    private static final long IDLE_TIMEOUT_MS = 2000; // Pump stops once sending is done and the receiver has been quiet this long
+
+    private LinkCli() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        if (args.length < 2) {
+            usage();
+            return;
+        }
+        LinkMetrics.registerMBean();
+        int statsIntervalMs = LinkSettings.statsIntervalMs();
+        if (statsIntervalMs > 0) {
+            LinkMetrics.startReporter(statsIntervalMs, System.err::println);
+        }
+        switch (args[0]) {
+            case "send":
+                System.exit(send(args[1], arg(args, 2)) == 0 ? 0 : 1);
+                break;
+            case "receive":
+                receive(args[1], arg(args, 2), () -> false);
+                break;
+            case "pump":
+                if (args.length < 3) {
+                    usage();
+                    return;
+                }
+                pump(args[1], args[2], arg(args, 3), arg(args, 4));
+                break;
+            case "sendfile":
+                if (args.length < 3) {
+                    usage();
+                    return;
+                }
+                System.exit(sendFile(args[1], args[2]) == 0 ? 0 : 1);
+                break;
+            case "receivefile":
+                if (args.length < 3) {
+                    usage();
+                    return;
+                }
+                System.exit(receiveFile(args[1], args[2], () -> false) ? 0 : 1);
+                break;
+            case "pumpfile":
+                if (args.length < 5) {
+                    usage();
+                    return;
+                }
+                pumpFile(args[1], args[2], args[3], args[4]);
+                break;
+            case "hub":
+                if (args.length < 3) {
+                    usage();
+                    return;
+                }
+                hub(args[1], Arrays.copyOfRange(args, 2, args.length));
+                break;
+            case "mux":
+                if (args.length < 4) {
+                    usage();
+                    return;
+                }
+                mux(args[1], args[2], Arrays.copyOfRange(args, 3, args.length));
+                break;
+            case "journal":
+                journal(args[1], Arrays.copyOfRange(args, 2, args.length));
+                break;
+            case "replay":
+                replay(args[1], "realtime".equals(arg(args, 2)),
+                        "tx".equals(arg(args, 3)) ? WireCapture.SENT : WireCapture.RECEIVED, arg(args, 4));
+                break;
+            case "probe":
+                if (args.length < 3) {
+                    usage();
+                    return;
+                }
+                System.exit(probe(args[1], args[2]) ? 0 : 1);
+                break;
+            default:
+                usage();
+        }
+    }
+
+    private static int send(String portName, String inFile) throws IOException {
+        Transport port = openOrExit(portName, SerialPort.TIMEOUT_WRITE_BLOCKING);
+        Runnable reloadLine = reloadLine(port);
+        Config.addListener(reloadLine);
+        try (InputStream in = inFile != null ? new FileInputStream(inFile) : System.in) {
+            byte[] message = readAll(in);
+            if (LinkSettings.arqWindow() > 0) {
+                return sendReliably(port, message);
+            }
+            warnIfCompressionIgnored();
+            SenderSession session = new SenderSession(port, LinkSettings.frameFormat());
+            session.setBatched(LinkSettings.batchedSend());
+            int failed = session.send(message, new SenderSession.Listener() {
+                @Override
+                public void onPacket(int packetNumber, byte[] buffer, int offset, int length) {
+                }
+
+                @Override
+                public void onCollision(int packetNumber) {
+                }
+
+                @Override
+                public void onFailed(int packetNumber) {
+                    System.err.println("Failed to send packet " + packetNumber + " after " + SenderSession.MAX_ATTEMPTS + " attempts.");
+                }
+            });
+            System.err.println("Sent " + message.length + " bytes from " + portName + " with " + port.getLineSettings() + compressionNote() + ", " + failed + " packets failed.");
+            return failed;
+        } finally {
+            Config.removeListener(reloadLine);
+            port.close();
+        }
+    }
+
+    // Puts the port on the line settings in config.properties when they change there
+    private static Runnable reloadLine(Transport port) {
+        return () -> {
+            LineSettings settings = LinkSettings.lineSettings();
+            if (!settings.equals(port.getLineSettings())) {
+                boolean applied = port.setLineSettings(settings);
+                System.err.println((applied ? "Switched " : "Could not fully switch ") + port.getName() + " to " + settings + ".");
+            }
+        };
+    }
+
+    // Waits for every frame to be acknowledged; returns 1 if the link went down
+    private static int sendReliably(Transport port, byte[] message) throws IOException {
+        try (ArqSender sender = new ArqSender(port, LinkSettings.frameFormat(), LinkSettings.arqWindow(),
+                LinkSettings.arqTimeoutMs(), LinkSettings.arqMaxRetries())) {
+            sender.getSession().setBatched(LinkSettings.batchedSend());
+            sender.setCompression(LinkSettings.compression());
+            sender.send(message).get();
+            System.err.println("Sent " + message.length + " bytes from " + port.getName() + " with " + port.getLineSettings()
+                    + compressionNote() + ", window " + sender.getWindow() + ", all acknowledged.");
+            return 0;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while sending");
+        } catch (ExecutionException e) {
+            System.err.println("Error: " + e.getCause().getMessage());
+            return 1;
+        }
+    }
+
+    private static void receive(String portName, String outFile, BooleanSupplier sendingDone) throws IOException, InterruptedException {
+        Transport port = openOrExit(portName, SerialPort.TIMEOUT_READ_SEMI_BLOCKING);
+        OutputStream out = new BufferedOutputStream(outFile != null ? new FileOutputStream(outFile) : System.out);
+        AtomicLong lastFrameAt = new AtomicLong(System.currentTimeMillis());
+        // Frames are written straight from the decoder's buffer on the reader thread
+        FrameDecoder.Handler handler = (destination, source, buffer, offset, length, fcs) -> {
+            synchronized (out) {
+                try {
+                    out.write(buffer, offset, length);
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+            lastFrameAt.set(System.currentTimeMillis());
+        };
+        Runnable start;
+        Runnable stop;
+        Runnable reloadFormat = () -> { };
+        ReceiveJournal journal = ReceiveJournal.openConfigured(portName);
+        if (LinkSettings.arqWindow() > 0) {
+            // Both ends have to agree on the format and window, so no reloading here
+            ArqReceiver session = new ArqReceiver(port, LinkSettings.frameFormat(), LinkSettings.arqWindow(), handler);
+            session.setJournal(journal);
+            start = session::start;
+            stop = session::stop;
+        } else {
+            ReceiverSession session = new ReceiverSession(port, LinkSettings.frameFormat(), handler);
+            session.setJournal(journal);
+            reloadFormat = () -> session.setFormat(LinkSettings.frameFormat());
+            start = session::start;
+            stop = session::stop;
+        }
+        Runnable reloadLine = reloadLine(port);
+        Config.addListener(reloadFormat);
+        Config.addListener(reloadLine);
+        start.run();
+        try {
+            while (!sendingDone.getAsBoolean() || System.currentTimeMillis() - lastFrameAt.get() < IDLE_TIMEOUT_MS) {
+                Thread.sleep(100);
+                synchronized (out) {
+                    out.flush();
+                }
+            }
+        } finally {
+            Config.removeListener(reloadFormat);
+            Config.removeListener(reloadLine);
+            stop.run();
+            port.close();
+            if (journal != null) {
+                journal.close();
+                System.err.println("Journal in " + journal.getDirectory() + " up to record " + (journal.getNextSequence() - 1)
+                        + ", " + journal.getDroppedRecords() + " dropped.");
+            }
+            synchronized (out) {
+                out.flush();
+                if (outFile != null) {
+                    out.close();
+                }
+            }
+        }
+    }
+
+    private static void pump(String sendPort, String receivePort, String inFile, String outFile) throws Exception {
+        AtomicBoolean sendingDone = new AtomicBoolean();
+        Thread receiver = new Thread(() -> {
+            try {
+                receive(receivePort, outFile, sendingDone::get);
+            } catch (IOException e) {
+                System.err.println("Error: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "link-receiver");
+        receiver.start();
+        int failed = send(sendPort, inFile);
+        sendingDone.set(true);
+        receiver.join();
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    private static int sendFile(String portName, String inFile) throws IOException, InterruptedException {
+        Transport port = openOrExit(portName, SerialPort.TIMEOUT_WRITE_BLOCKING);
+        Runnable reloadLine = reloadLine(port);
+        Config.addListener(reloadLine);
+        ArqSender arq = null;
+        try {
+            Function<ByteBuffer, CompletableFuture<Integer>> link;
+            if (LinkSettings.arqWindow() > 0) {
+                arq = new ArqSender(port, LinkSettings.frameFormat(), LinkSettings.arqWindow(),
+                        LinkSettings.arqTimeoutMs(), LinkSettings.arqMaxRetries());
+                arq.getSession().setBatched(LinkSettings.batchedSend());
+                arq.setCompression(LinkSettings.compression());
+                link = arq::send;
+            } else {
+                warnIfCompressionIgnored();
+                SenderSession session = new SenderSession(port, LinkSettings.frameFormat());
+                session.setBatched(LinkSettings.batchedSend());
+                link = data -> session.sendAsync(data, Arq.QUIET);
+            }
+            FileSender sender = new FileSender(Paths.get(inFile), link, progressPrinter("Sent"));
+            int failed = sender.start().get();
+            System.err.println("Sent " + inFile + " (" + sender.getSize() + " bytes) from " + portName + " with "
+                    + port.getLineSettings() + compressionNote() + ", " + failed + " packets failed.");
+            return failed;
+        } catch (ExecutionException e) {
+            System.err.println("Error: " + e.getCause().getMessage());
+            return 1;
+        } finally {
+            Config.removeListener(reloadLine);
+            if (arq != null) {
+                arq.close();
+            }
+            port.close();
+        }
+    }
+
+    // Returns whether the whole file arrived
+    private static boolean receiveFile(String portName, String outFile, BooleanSupplier sendingDone) throws IOException, InterruptedException {
+        Transport port = openOrExit(portName, SerialPort.TIMEOUT_READ_SEMI_BLOCKING);
+        AtomicLong lastFrameAt = new AtomicLong(System.currentTimeMillis());
+        FileReceiver receiver = new FileReceiver(Paths.get(outFile), progressPrinter("Received"));
+        FrameDecoder.Handler handler = (destination, source, buffer, offset, length, fcs) -> {
+            receiver.onFrame(destination, source, buffer, offset, length, fcs);
+            lastFrameAt.set(System.currentTimeMillis());
+        };
+        Runnable stop;
+        if (LinkSettings.arqWindow() > 0) {
+            ArqReceiver session = new ArqReceiver(port, LinkSettings.frameFormat(), LinkSettings.arqWindow(), handler);
+            session.start();
+            stop = session::stop;
+        } else {
+            ReceiverSession session = new ReceiverSession(port, LinkSettings.frameFormat(), handler);
+            session.start();
+            stop = session::stop;
+        }
+        Runnable reloadLine = reloadLine(port);
+        Config.addListener(reloadLine);
+        try {
+            // Once the file is in, stay a while to acknowledge retransmissions of frames whose ACK got lost
+            while (System.currentTimeMillis() - lastFrameAt.get() < IDLE_TIMEOUT_MS
+                    || !receiver.getResult().isDone() && !sendingDone.getAsBoolean()) {
+                Thread.sleep(100);
+            }
+            if (!receiver.getResult().isDone()) {
+                receiver.close();
+            }
+            receiver.getResult().get();
+            System.err.println("Received " + outFile + " on " + portName + ".");
+            return true;
+        } catch (ExecutionException e) {
+            System.err.println("Error: " + e.getCause().getMessage());
+            return false;
+        } finally {
+            Config.removeListener(reloadLine);
+            stop.run();
+            port.close();
+        }
+    }
+
+    private static void pumpFile(String sendPort, String receivePort, String inFile, String outFile) throws Exception {
+        AtomicBoolean sendingDone = new AtomicBoolean();
+        AtomicBoolean received = new AtomicBoolean();
+        Thread receiver = new Thread(() -> {
+            try {
+                received.set(receiveFile(receivePort, outFile, sendingDone::get));
+            } catch (IOException e) {
+                System.err.println("Error: " + e.getMessage());
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }, "link-receiver");
+        receiver.start();
+        int failed = sendFile(sendPort, inFile);
+        sendingDone.set(true);
+        receiver.join();
+        System.exit(failed == 0 && received.get() ? 0 : 1);
+    }
+
+    private static FileTransfer.Progress progressPrinter(String verb) {
+        return FileTransfer.throttled(1000, (bytes, total, elapsedNanos) ->
+                System.err.println(verb + " " + FileTransfer.describe(bytes, total, elapsedNanos)));
+    }
+
+    // For senders without ARQ, which do not compress
+    private static void warnIfCompressionIgnored() {
+        if (LinkSettings.compression()) {
+            System.err.println("COMPRESSION=deflate only applies over ARQ; sending uncompressed.");
+        }
+    }
+
+    // ", deflated to 42%" when compressing, so the gain in effective throughput shows
+    private static String compressionNote() {
+        double ratio = LinkMetrics.global().getCompressionRatio();
+        return ratio > 0 ? String.format(", deflated to %.0f%%", ratio * 100) : "";
+    }
+
+    private static void hub(String inFile, String[] pairs) throws Exception {
+        byte[] message;
+        try (InputStream in = new FileInputStream(inFile)) {
+            message = readAll(in);
+        }
+        AtomicLong lastFrameAt = new AtomicLong(System.currentTimeMillis());
+        int failed = 0;
+        try (LinkHub hub = new LinkHub(LinkSettings.hubThreads(), LinkSettings.frameFormat(), LinkSettings.batchedSend())) {
+            List<Future<Integer>> sends = new ArrayList<>();
+            for (String pair : pairs) {
+                String[] ports = pair.split(",", 2);
+                if (ports.length != 2) {
+                    usage();
+                    return;
+                }
+                LinkHub.Link link = hub.add(ports[0], ports[1],
+                        (destination, source, buffer, offset, length, fcs) -> lastFrameAt.set(System.currentTimeMillis()));
+                sends.add(link.send(message));
+            }
+            while (!allDone(sends) || System.currentTimeMillis() - lastFrameAt.get() < IDLE_TIMEOUT_MS) {
+                Thread.sleep(1000);
+                for (LinkHub.Link link : hub.getLinks()) {
+                    System.err.println(link.status());
+                }
+            }
+            for (Future<Integer> send : sends) {
+                failed += send.get();
+            }
+        }
+        System.err.println("Sent " + message.length + " bytes over " + pairs.length + " links with " + LinkSettings.lineSettings() + ", " + failed + " packets failed.");
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    private static void mux(String sendPort, String receivePort, String[] inFiles) throws Exception {
+        if (inFiles.length > FrameFormat.MAX_ADDRESS) {
+            System.err.println("At most " + FrameFormat.MAX_ADDRESS + " files, one per address.");
+            System.exit(2);
+        }
+        Transport out = openOrExit(sendPort, SerialPort.TIMEOUT_WRITE_BLOCKING);
+        Transport in = openOrExit(receivePort, SerialPort.TIMEOUT_READ_SEMI_BLOCKING);
+        AtomicLong lastFrameAt = new AtomicLong(System.currentTimeMillis());
+        FrameRouter router = new FrameRouter();
+        List<OutputStream> outputs = new ArrayList<>();
+        int failed = 0;
+        try {
+            for (int i = 0; i < inFiles.length; i++) {
+                OutputStream output = new BufferedOutputStream(new FileOutputStream(inFiles[i] + ".received"));
+                outputs.add(output);
+                router.route(i + 1, (destination, source, buffer, offset, length, fcs) -> {
+                    try {
+                        output.write(buffer, offset, length);
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                    lastFrameAt.set(System.currentTimeMillis());
+                });
+            }
+            ReceiverSession receiver = new ReceiverSession(in, LinkSettings.frameFormat(), router);
+            receiver.start();
+            warnIfCompressionIgnored();
+            SenderSession sender = new SenderSession(out, LinkSettings.frameFormat());
+            sender.setBatched(LinkSettings.batchedSend());
+            List<Future<Integer>> sends = new ArrayList<>();
+            for (int i = 0; i < inFiles.length; i++) {
+                try (InputStream file = new FileInputStream(inFiles[i])) {
+                    sends.add(sender.sendAsync(readAll(file), i + 1, Arq.QUIET));
+                }
+            }
+            while (!allDone(sends) || System.currentTimeMillis() - lastFrameAt.get() < IDLE_TIMEOUT_MS) {
+                Thread.sleep(100);
+            }
+            receiver.stop();
+            for (Future<Integer> send : sends) {
+                failed += send.get();
+            }
+        } finally {
+            for (OutputStream output : outputs) {
+                output.close();
+            }
+            out.close();
+            in.close();
+        }
+        System.err.println("Sent " + inFiles.length + " files to addresses 1.." + inFiles.length + " from " + sendPort
+                + " with " + out.getLineSettings() + compressionNote() + ", " + failed + " packets failed.");
+        System.exit(failed == 0 ? 0 : 1);
+    }
+
+    private static void journal(String dir, String[] options) throws IOException {
+        JournalReader.Query query = JournalReader.Query.ALL;
+        SimpleDateFormat time = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss");
+        try {
+            for (int i = 0; i + 1 < options.length; i += 2) {
+                String value = options[i + 1];
+                switch (options[i]) {
+                    case "from":
+                        query = query.withSequences(Long.parseLong(value), Long.MAX_VALUE);
+                        break;
+                    case "since":
+                        query = query.withTimes(time.parse(value).getTime(), Long.MAX_VALUE);
+                        break;
+                    case "source":
+                        query = query.withSource(Integer.parseInt(value));
+                        break;
+                    case "dest":
+                        query = query.withDestination(Integer.parseInt(value));
+                        break;
+                    case "text":
+                        query = query.withText(value);
+                        break;
+                    case "limit":
+                        query = query.withLimit(Integer.parseInt(value));
+                        break;
+                    default:
+                        usage();
+                        return;
+                }
+            }
+        } catch (NumberFormatException | ParseException e) {
+            System.err.println("Bad value: " + e.getMessage());
+            System.exit(2);
+        }
+        new JournalReader(Paths.get(dir)).forEach(query, record -> {
+            System.out.println(record);
+            return true;
+        });
+    }
+
+    private static boolean probe(String portName, String otherPortName) throws IOException {
+        Transport port = openOrExit(portName, SerialPort.TIMEOUT_READ_SEMI_BLOCKING);
+        Transport other = openOrExit(otherPortName, SerialPort.TIMEOUT_READ_SEMI_BLOCKING);
+        try {
+            LineSettings found = LineProbe.probe(port, other, LinkSettings.lineSettings(),
+                    (settings, clean) -> System.err.println((clean ? "Clean: " : "Failed: ") + settings));
+            if (found == null) {
+                System.err.println("No setting got the test pattern through between " + portName + " and " + otherPortName + ".");
+                return false;
+            }
+            System.err.println("Fastest clean setting: " + found + ", timeouts " + found.getReadTimeoutMs() + " ms.");
+            System.out.println("BAUD_RATE=" + found.getBaudRate());
+            System.out.println("FLOW_CONTROL=" + found.getFlowControl().getKey());
+            return true;
+        } finally {
+            port.close();
+            other.close();
+        }
+    }
+
+    private static void replay(String captureFile, boolean realtime, byte direction, String outFile) throws IOException {
+        FrameDecoder decoder = new FrameDecoder(LinkSettings.frameFormat());
+        OutputStream out = new BufferedOutputStream(outFile != null ? new FileOutputStream(outFile) : System.out);
+        long[] totals = new long[3]; // Frames, payload bytes, wire bytes
+        FrameDecoder.Handler handler = (destination, source, buffer, offset, length, fcs) -> {
+            try {
+                out.write(buffer, offset, length);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            totals[0]++;
+            totals[1] += length;
+        };
+        long startedAt = System.nanoTime();
+        long[] firstRecord = {-1};
+        try (CaptureReader reader = new CaptureReader(Paths.get(captureFile))) {
+            reader.forEach((nanos, recordDirection, buffer, offset, length) -> {
+                if (recordDirection != direction) {
+                    return;
+                }
+                if (realtime) {
+                    if (firstRecord[0] < 0) {
+                        firstRecord[0] = nanos;
+                    }
+                    long wait = (nanos - firstRecord[0]) - (System.nanoTime() - startedAt);
+                    if (wait > 0) {
+                        try {
+                            TimeUnit.NANOSECONDS.sleep(wait);
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                            throw new InterruptedIOException("Replay interrupted");
+                        }
+                    }
+                }
+                totals[2] += length;
+                decoder.feed(buffer, offset, length, handler);
+            });
+        } finally {
+            out.flush();
+            if (outFile != null) {
+                out.close();
+            }
+        }
+        double seconds = Math.max(1, System.nanoTime() - startedAt) / 1e9;
+        System.err.printf("Replayed %d wire bytes into %d frames (%d payload bytes) in %.3f s, %.1f MB/s.%n",
+                totals[2], totals[0], totals[1], seconds, totals[2] / seconds / 1e6);
+    }
+
+    private static boolean allDone(List<Future<Integer>> futures) {
+        for (Future<Integer> future : futures) {
+            if (!future.isDone()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static Transport openOrExit(String portName, int timeoutMode) {
+        Transport port = LinkPorts.open(portName, timeoutMode);
+        if (port == null) {
+            System.err.println("Failed to open " + portName + ".");
+            System.exit(2);
+        }
+        return port;
+    }
+
+    private static byte[] readAll(InputStream in) throws IOException {
+        ByteArrayOutputStream buffer = new ByteArrayOutputStream();
+        byte[] chunk = new byte[8192];
+        int numRead;
+        while ((numRead = in.read(chunk)) != -1) {
+            buffer.write(chunk, 0, numRead);
+        }
+        return buffer.toByteArray();
+    }
+
+    private static String arg(String[] args, int index) {
+        return args.length > index ? args[index] : null;
+    }
+
+    private static void usage() {
+        System.err.println("Usage: java -cp lab1.jar org.example.LinkCli send <port> [inFile]");
+        System.err.println("       java -cp lab1.jar org.example.LinkCli receive <port> [outFile]");
+        System.err.println("       java -cp lab1.jar org.example.LinkCli pump <sendPort> <receivePort> [inFile] [outFile]");
+        System.err.println("       java -cp lab1.jar org.example.LinkCli sendfile <port> <inFile>");
+        System.err.println("       java -cp lab1.jar org.example.LinkCli receivefile <port> <outFile>");
+        System.err.println("       java -cp lab1.jar org.example.LinkCli pumpfile <sendPort> <receivePort> <inFile> <outFile>");
+        System.err.println("       java -cp lab1.jar org.example.LinkCli hub <inFile> <sendPort,receivePort>...");
+        System.err.println("       java -cp lab1.jar org.example.LinkCli mux <sendPort> <receivePort> <inFile>...");
+        System.err.println("       java -cp lab1.jar org.example.LinkCli replay <capture> [fast|realtime] [rx|tx] [outFile]");
+        System.err.println("       java -cp lab1.jar org.example.LinkCli probe <port> <otherPort>");
+        System.err.println("       java -cp lab1.jar org.example.LinkCli journal <dir> [from <seq>] [since <yyyy-MM-ddTHH:mm:ss>] [source <n>] [dest <n>] [text <text>] [limit <n>]");
+    }
+}
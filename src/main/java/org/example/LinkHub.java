@@ -0,0 +1,171 @@
+package org.example;
+
+import com.fazecast.jSerialComm.SerialPort;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Runs many send/receive port pairs in one process. Each {@link Link} has its own
+ * transports, sessions and counters; frames from all links share one bounded pool of
+ * scheduler threads, which serve other links while one backs off, and received frames
+ * are handled on each transport's reader thread as usual.
+ */
+public final class LinkHub implements AutoCloseable {
+    private final ScheduledExecutorService pool;
+    private final FrameFormat format;
+    private final boolean batched;
+    private final List<Link> links = new ArrayList<>();
+
+    /**
+     * One sender and one receiver with nothing shared with other links but the pool.
+     */
+    public final class Link {
+        private final Transport sendPort;
+        private final Transport receivePort;
+        private final SenderSession sender;
+        private final ReceiverSession receiver;
+        private final AtomicLong framesFailed = new AtomicLong();
+        private final AtomicLong framesReceived = new AtomicLong();
+        private final AtomicLong bytesReceived = new AtomicLong();
+        private final AtomicInteger pendingSends = new AtomicInteger();
+
+        private Link(Transport sendPort, Transport receivePort, FrameDecoder.Handler handler) {
+            this.sendPort = sendPort;
+            this.receivePort = receivePort;
+            this.sender = new SenderSession(sendPort, format, pool);
+            this.sender.setBatched(batched);
+            this.receiver = new ReceiverSession(receivePort, format, (destination, source, buffer, offset, length, fcs) -> {
+                framesReceived.incrementAndGet();
+                bytesReceived.addAndGet(length);
+                handler.onFrame(destination, source, buffer, offset, length, fcs);
+            });
+            this.receiver.start();
+        }
+
+        public String getName() {
+            return sendPort.getName() + " -> " + receivePort.getName();
+        }
+
+        /**
+         * Queues the message on the link; the hub's pool carries its frames, and sends on
+         * the same link run one at a time.
+         *
+         * @return number of frames that could not be sent
+         */
+        public Future<Integer> send(byte[] message) {
+            pendingSends.incrementAndGet();
+            return sender.sendAsync(message, new SenderSession.Listener() {
+                @Override
+                public void onPacket(int packetNumber, byte[] buffer, int offset, int length) {
+                }
+
+                @Override
+                public void onCollision(int packetNumber) {
+                }
+
+                @Override
+                public void onFailed(int packetNumber) {
+                    framesFailed.incrementAndGet();
+                }
+            }).whenComplete((failed, error) -> pendingSends.decrementAndGet());
+        }
+
+        public boolean isSending() {
+            return pendingSends.get() > 0;
+        }
+
+        public long getFramesSent() {
+            return sender.getFramesSent();
+        }
+
+        public long getFramesFailed() {
+            return framesFailed.get();
+        }
+
+        public long getFramesReceived() {
+            return framesReceived.get();
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived.get();
+        }
+
+        public String status() {
+            return getName() + ": sent " + getFramesSent() + " frames, " + getFramesFailed() + " failed, received "
+                    + getFramesReceived() + " frames (" + getBytesReceived() + " bytes)" + (isSending() ? ", sending" : "");
+        }
+
+        private void close() {
+            receiver.stop();
+            sendPort.close();
+            receivePort.close();
+        }
+    }
+
+    /**
+     * @param ioThreads threads carrying the frames of all links
+     */
+    public LinkHub(int ioThreads, FrameFormat format, boolean batched) {
+        this.pool = Executors.newScheduledThreadPool(Math.max(1, ioThreads), new ThreadFactory() {
+            private final AtomicInteger count = new AtomicInteger();
+
+            @Override
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "link-hub-" + count.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+        this.format = format;
+        this.batched = batched;
+    }
+
+    /**
+     * Opens both ports and starts receiving; frames are handed to the handler on the
+     * receive port's reader thread.
+     *
+     * @throws IOException if either port cannot be opened
+     */
+    public synchronized Link add(String sendPortName, String receivePortName, FrameDecoder.Handler handler) throws IOException {
+        Transport sendPort = LinkPorts.open(sendPortName, SerialPort.TIMEOUT_WRITE_BLOCKING);
+        if (sendPort == null) {
+            throw new IOException("Failed to open " + sendPortName);
+        }
+        Transport receivePort = LinkPorts.open(receivePortName, SerialPort.TIMEOUT_READ_SEMI_BLOCKING);
+        if (receivePort == null) {
+            sendPort.close();
+            throw new IOException("Failed to open " + receivePortName);
+        }
+        Link link = new Link(sendPort, receivePort, handler);
+        links.add(link);
+        return link;
+    }
+
+    public synchronized List<Link> getLinks() {
+        return Collections.unmodifiableList(new ArrayList<>(links));
+    }
+
+    @Override
+    public synchronized void close() {
+        pool.shutdownNow();
+        try {
+            pool.awaitTermination(1, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        for (Link link : links) {
+            link.close();
+        }
+        links.clear();
+    }
+}
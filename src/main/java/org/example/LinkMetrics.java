@@ -0,0 +1,327 @@
+package org.example;
+
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Process-wide link counters. Everything is a {@link LongAdder} or a
+ * {@link LatencyHistogram}, so the send and receive threads never contend on a lock.
+ * The same numbers are exposed over JMX and as a one-line summary that a headless
+ * runner can print periodically.
+ */
+public final class LinkMetrics implements LinkMetricsMBean {
+    public static final String OBJECT_NAME = "org.example:type=LinkMetrics";
+
+    private static final Logger logger = Logger.getLogger(LinkMetrics.class.getName());
+    private static final LinkMetrics GLOBAL = new LinkMetrics();
+
+    private final LongAdder framesSent = new LongAdder();
+    private final LongAdder framesFailed = new LongAdder();
+    private final LongAdder framesReceived = new LongAdder();
+    private final LongAdder framesDropped = new LongAdder();
+    private final LongAdder framesSkipped = new LongAdder();
+    private final LongAdder payloadBytesSent = new LongAdder();
+    private final LongAdder wireBytesSent = new LongAdder();
+    private final LongAdder payloadBytesReceived = new LongAdder();
+    private final LongAdder wireBytesReceived = new LongAdder();
+    private final LongAdder framesDamaged = new LongAdder();
+    private final LongAdder bitsFlipped = new LongAdder();
+    private final LongAdder fcsFailures = new LongAdder();
+    private final LongAdder correctionsSucceeded = new LongAdder();
+    private final LongAdder correctionsFailed = new LongAdder();
+    private final LongAdder collisions = new LongAdder();
+    private final LongAdder backoffNanos = new LongAdder();
+    private final LongAdder arqRetransmissions = new LongAdder();
+    private final LongAdder arqDuplicates = new LongAdder();
+    private final LongAdder compressionInput = new LongAdder();
+    private final LongAdder compressionOutput = new LongAdder();
+    private final LongAdder inflatedBytes = new LongAdder();
+    private final LongAdder inflateFailures = new LongAdder();
+    private final LatencyHistogram frameLatency = new LatencyHistogram();
+
+    private LinkMetrics() {
+    }
+
+    public static LinkMetrics global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Registers the global instance with the platform MBean server; later calls do nothing.
+     */
+    public static void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(GLOBAL, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // Already registered
+        } catch (JMException e) {
+            logger.log(Level.WARNING, "Could not register " + OBJECT_NAME, e);
+        }
+    }
+
+    /**
+     * Hands {@link #summary()} to the sink every period on a daemon thread.
+     *
+     * @return cancel it to stop reporting
+     */
+    public static ScheduledFuture<?> startReporter(long periodMs, Consumer<String> sink) {
+        ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "link-stats");
+            thread.setDaemon(true);
+            return thread;
+        });
+        return executor.scheduleAtFixedRate(() -> sink.accept(GLOBAL.summary()), periodMs, periodMs, TimeUnit.MILLISECONDS);
+    }
+
+    // Send side
+
+    void frameTransmitted(int frameLength) {
+        wireBytesSent.add(frameLength);
+    }
+
+    void frameSent(int payloadLength, long latencyNanos) {
+        framesSent.increment();
+        payloadBytesSent.add(payloadLength);
+        frameLatency.recordNanos(latencyNanos);
+    }
+
+    void frameFailed() {
+        framesFailed.increment();
+    }
+
+    void collision() {
+        collisions.increment();
+    }
+
+    void backoff(long nanos) {
+        backoffNanos.add(nanos);
+    }
+
+    void arqRetransmission() {
+        arqRetransmissions.increment();
+    }
+
+    void compressed(int messageLength, int compressedLength) {
+        compressionInput.add(messageLength);
+        compressionOutput.add(compressedLength);
+    }
+
+    // Receive side
+
+    void bytesReceived(int count) {
+        wireBytesReceived.add(count);
+    }
+
+    void frameReceived(int payloadLength) {
+        framesReceived.increment();
+        payloadBytesReceived.add(payloadLength);
+    }
+
+    void frameDropped() {
+        framesDropped.increment();
+    }
+
+    void framesSkipped(long count) {
+        framesSkipped.add(count);
+    }
+
+    void errorInjected(int bits) {
+        framesDamaged.increment();
+        bitsFlipped.add(bits);
+    }
+
+    void fcsFailure() {
+        fcsFailures.increment();
+    }
+
+    void correction(boolean succeeded) {
+        (succeeded ? correctionsSucceeded : correctionsFailed).increment();
+    }
+
+    void arqDuplicate() {
+        arqDuplicates.increment();
+    }
+
+    void inflated(int count) {
+        inflatedBytes.add(count);
+    }
+
+    void inflateFailure() {
+        inflateFailures.increment();
+    }
+
+    public LatencyHistogram getFrameLatency() {
+        return frameLatency;
+    }
+
+    @Override
+    public long getFramesSent() {
+        return framesSent.sum();
+    }
+
+    @Override
+    public long getFramesFailed() {
+        return framesFailed.sum();
+    }
+
+    @Override
+    public long getFramesReceived() {
+        return framesReceived.sum();
+    }
+
+    @Override
+    public long getFramesDropped() {
+        return framesDropped.sum();
+    }
+
+    @Override
+    public long getFramesSkipped() {
+        return framesSkipped.sum();
+    }
+
+    @Override
+    public long getPayloadBytesSent() {
+        return payloadBytesSent.sum();
+    }
+
+    @Override
+    public long getWireBytesSent() {
+        return wireBytesSent.sum();
+    }
+
+    @Override
+    public long getPayloadBytesReceived() {
+        return payloadBytesReceived.sum();
+    }
+
+    @Override
+    public long getWireBytesReceived() {
+        return wireBytesReceived.sum();
+    }
+
+    @Override
+    public double getSendOverhead() {
+        long payload = payloadBytesSent.sum();
+        return payload == 0 ? 0 : (double) wireBytesSent.sum() / payload;
+    }
+
+    @Override
+    public long getFramesDamaged() {
+        return framesDamaged.sum();
+    }
+
+    @Override
+    public long getBitsFlipped() {
+        return bitsFlipped.sum();
+    }
+
+    @Override
+    public long getFcsFailures() {
+        return fcsFailures.sum();
+    }
+
+    @Override
+    public long getCorrectionsSucceeded() {
+        return correctionsSucceeded.sum();
+    }
+
+    @Override
+    public long getCorrectionsFailed() {
+        return correctionsFailed.sum();
+    }
+
+    @Override
+    public long getCollisions() {
+        return collisions.sum();
+    }
+
+    @Override
+    public long getBackoffMillis() {
+        return TimeUnit.NANOSECONDS.toMillis(backoffNanos.sum());
+    }
+
+    @Override
+    public long getArqRetransmissions() {
+        return arqRetransmissions.sum();
+    }
+
+    @Override
+    public long getArqDuplicates() {
+        return arqDuplicates.sum();
+    }
+
+    @Override
+    public long getCompressionInputBytes() {
+        return compressionInput.sum();
+    }
+
+    @Override
+    public long getCompressionOutputBytes() {
+        return compressionOutput.sum();
+    }
+
+    @Override
+    public double getCompressionRatio() {
+        long input = compressionInput.sum();
+        return input == 0 ? 0 : (double) compressionOutput.sum() / input;
+    }
+
+    @Override
+    public long getInflatedBytes() {
+        return inflatedBytes.sum();
+    }
+
+    @Override
+    public long getInflateFailures() {
+        return inflateFailures.sum();
+    }
+
+    @Override
+    public long getFrameLatencyMeanMicros() {
+        return frameLatency.getMeanMicros();
+    }
+
+    @Override
+    public long getFrameLatencyP99Micros() {
+        return frameLatency.getPercentileMicros(0.99);
+    }
+
+    @Override
+    public long getFrameLatencyMaxMicros() {
+        return frameLatency.getMaxMicros();
+    }
+
+    @Override
+    public void reset() {
+        for (LongAdder adder : new LongAdder[]{framesSent, framesFailed, framesReceived, framesDropped, framesSkipped,
+                payloadBytesSent, wireBytesSent, payloadBytesReceived, wireBytesReceived, framesDamaged, bitsFlipped, fcsFailures,
+                correctionsSucceeded, correctionsFailed, collisions, backoffNanos, arqRetransmissions, arqDuplicates,
+                compressionInput, compressionOutput, inflatedBytes, inflateFailures}) {
+            adder.reset();
+        }
+        frameLatency.reset();
+    }
+
+    public String summary() {
+        return String.format("sent %d/%d failed, recv %d (%d dropped, %d for other addresses), wire %d B for %d B payload (x%.2f), recv %d B wire/%d B payload, "
+                        + "damaged %d frames/%d bits, fcs errors %d, corrected %d/%d failed, collisions %d, backoff %d ms, arq resent %d/%d duplicates, "
+                        + "compressed %d B to %d B (x%.2f), inflated %d B/%d failed, latency mean %d us p99 %d us max %d us",
+                getFramesSent(), getFramesFailed(), getFramesReceived(), getFramesDropped(), getFramesSkipped(),
+                getWireBytesSent(), getPayloadBytesSent(), getSendOverhead(),
+                getWireBytesReceived(), getPayloadBytesReceived(),
+                getFramesDamaged(), getBitsFlipped(), getFcsFailures(), getCorrectionsSucceeded(), getCorrectionsFailed(), getCollisions(), getBackoffMillis(),
+                getArqRetransmissions(), getArqDuplicates(),
+                getCompressionInputBytes(), getCompressionOutputBytes(), getCompressionRatio(), getInflatedBytes(), getInflateFailures(),
+                getFrameLatencyMeanMicros(), getFrameLatencyP99Micros(), getFrameLatencyMaxMicros());
+    }
+}
@@ -0,0 +1,83 @@
+package org.example;
+
+/**
+ * JMX view of {@link LinkMetrics}, registered as {@value LinkMetrics#OBJECT_NAME}.
+ */
+public interface LinkMetricsMBean {
+    long getFramesSent();
+
+    long getFramesFailed();
+
+    long getFramesReceived();
+
+    long getFramesDropped();
+
+    /**
+     * Frames the decoders passed over because they were for addresses without a route.
+     */
+    long getFramesSkipped();
+
+    long getPayloadBytesSent();
+
+    long getWireBytesSent();
+
+    long getPayloadBytesReceived();
+
+    long getWireBytesReceived();
+
+    /**
+     * Wire bytes per payload byte on the send side, 0 before anything is sent.
+     */
+    double getSendOverhead();
+
+    /**
+     * Received frames the simulated channel damaged on purpose, and the bits it flipped
+     * in them; compare with the FCS failures and corrections that followed.
+     */
+    long getFramesDamaged();
+
+    long getBitsFlipped();
+
+    long getFcsFailures();
+
+    long getCorrectionsSucceeded();
+
+    long getCorrectionsFailed();
+
+    long getCollisions();
+
+    long getBackoffMillis();
+
+    long getArqRetransmissions();
+
+    long getArqDuplicates();
+
+    /**
+     * Message bytes that went into compression on the send side.
+     */
+    long getCompressionInputBytes();
+
+    long getCompressionOutputBytes();
+
+    /**
+     * Compressed bytes per message byte, 0 before anything is compressed; below 1 the
+     * line carries that much more text in the same time.
+     */
+    double getCompressionRatio();
+
+    long getInflatedBytes();
+
+    /**
+     * Compressed streams that broke off on the receive side, each costing the rest of
+     * that stream.
+     */
+    long getInflateFailures();
+
+    long getFrameLatencyMeanMicros();
+
+    long getFrameLatencyP99Micros();
+
+    long getFrameLatencyMaxMicros();
+
+    void reset();
+}
@@ -0,0 +1,118 @@
+package org.example;
+
+import com.fazecast.jSerialComm.SerialPort;
+import com.fazecast.jSerialComm.SerialPortInvalidPortException;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.text.SimpleDateFormat;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Date;
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Opening and naming of the transports the link runs over. Names starting with
+ * {@code loop:} or {@code pty:} pick those transports, anything else is a serial port.
+ */
+public final class LinkPorts {
+    private static final Logger logger = Logger.getLogger(LinkPorts.class.getName());
+
+    private LinkPorts() {
+    }
+
+    /**
+     * Opens the port with the line settings from config.properties, recording its traffic
+     * into CAPTURE_DIR when that is set.
+     *
+     * @param timeoutMode jSerialComm timeout mode, only used for serial ports
+     * @return the opened transport, or null if it could not be opened
+     */
+    public static Transport open(String portName, int timeoutMode) {
+        return open(portName, timeoutMode, LinkSettings.lineSettings());
+    }
+
+    /**
+     * Opens the port with the given line settings, for a session of its own.
+     */
+    public static Transport open(String portName, int timeoutMode, LineSettings settings) {
+        Transport transport = openUncaptured(portName, timeoutMode, settings);
+        String captureDir = LinkSettings.captureDir();
+        if (transport == null || captureDir == null) {
+            return transport;
+        }
+        String stamp = new SimpleDateFormat("yyyyMMdd-HHmmss-SSS").format(new Date());
+        Path file = Paths.get(captureDir, portName.replaceAll("[^A-Za-z0-9]+", "_") + "-" + stamp + ".cap");
+        try {
+            Files.createDirectories(file.getParent());
+            return new CapturingTransport(transport, WireCapture.create(file));
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Capture disabled for " + portName, e);
+            return transport;
+        }
+    }
+
+    private static Transport openUncaptured(String portName, int timeoutMode, LineSettings settings) {
+        if (portName.startsWith(LoopbackTransport.PREFIX)) {
+            return withLineSettings(LoopbackTransport.open(portName, LinkSettings.loopbackBaudRate()), settings);
+        }
+        if (portName.startsWith(PtyTransport.PREFIX)) {
+            return withLineSettings(PtyTransport.open(portName), settings);
+        }
+        SerialPort port;
+        try {
+            port = SerialPort.getCommPort(portName);
+        } catch (SerialPortInvalidPortException e) {
+            return null;
+        }
+        settings.applyTo(port, timeoutMode);
+        return port.openPort() ? new SerialTransport(port, timeoutMode, settings) : null;
+    }
+
+    // Nothing to apply them to, but the status line shows them all the same
+    private static Transport withLineSettings(Transport transport, LineSettings settings) {
+        if (transport != null) {
+            transport.setLineSettings(settings);
+        }
+        return transport;
+    }
+
+    /**
+     * Names of the non-serial transports available here: the first two loopback pairs
+     * and any tty0tty nodes.
+     */
+    public static List<String> extraPortNames() {
+        List<String> names = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            names.add(LoopbackTransport.PREFIX + i);
+        }
+        File[] devices = new File("/dev").listFiles((dir, name) -> name.startsWith("tnt"));
+        if (devices != null) {
+            Arrays.sort(devices);
+            for (File device : devices) {
+                names.add(PtyTransport.PREFIX + device.getPath());
+            }
+        }
+        return names;
+    }
+
+    /**
+     * Sets up the port with the line settings from config.properties.
+     */
+    public static void configurePort(SerialPort port, int timeout) {
+        LinkSettings.lineSettings().applyTo(port, timeout);
+    }
+
+    /**
+     * Number used as the source address, e.g. 3 for COM3. Names without digits map to 0.
+     */
+    public static int portNumber(String portName) {
+        String digits = portName.replaceAll("\\D", "");
+        return digits.isEmpty() ? 0 : Integer.parseInt(digits);
+    }
+}
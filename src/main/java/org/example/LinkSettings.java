@@ -0,0 +1,239 @@
+package org.example;
+
+import com.fazecast.jSerialComm.SerialPort;
+
+/**
+ * Link parameters from config.properties, with the defaults used when a key is
+ * missing or malformed.
+ */
+public final class LinkSettings {
+    private LinkSettings() {
+    }
+
+    /**
+     * Simulated line speed of loopback pairs, 0 for unthrottled.
+     */
+    public static int loopbackBaudRate() {
+        return getInt("LOOPBACK_BAUD_RATE", 9600);
+    }
+
+    /**
+     * Whether senders gather frames into one write instead of writing each frame.
+     */
+    public static boolean batchedSend() {
+        return getBoolean("BATCHED_SEND", false);
+    }
+
+    /**
+     * FRAME_FORMAT is "fixed" (default) or "variable"; PAYLOAD_SIZE is the data bytes per
+     * frame, 1..255, defaulting to 8 for fixed frames and 255 for variable ones. FEC is
+     * "none" (default) or "hamming", which codes the data in that space.
+     */
+    public static FrameFormat frameFormat() {
+        String kind = Config.getProperty("FRAME_FORMAT");
+        boolean variable = kind != null && kind.trim().equalsIgnoreCase("variable");
+        int payloadSize = getInt("PAYLOAD_SIZE", variable ? FrameFormat.MAX_PAYLOAD : FrameEncoder.DEFAULT_DATA_LENGTH);
+        payloadSize = Math.max(1, Math.min(FrameFormat.MAX_PAYLOAD, payloadSize));
+        FrameFormat format = variable ? FrameFormat.variable(payloadSize) : FrameFormat.fixed(payloadSize);
+        String fec = Config.getProperty("FEC");
+        return fec != null && fec.trim().equalsIgnoreCase("hamming") && payloadSize > 1 ? format.withFec(true) : format;
+    }
+
+    /**
+     * COMPRESSION is "none" (default) or "deflate", which compresses what this end sends;
+     * receivers inflate marked frames whatever their own setting. Only ARQ senders
+     * compress: on a plain link a lost or repeated frame breaks the stream.
+     */
+    public static boolean compression() {
+        String compression = Config.getProperty("COMPRESSION");
+        return compression != null && compression.trim().equalsIgnoreCase("deflate");
+    }
+
+    /**
+     * Serial line parameters: BAUD_RATE (9600), DATA_BITS (8), STOP_BITS 1 (default), 1.5 or
+     * 2, PARITY "none" (default), "odd", "even", "mark" or "space", FLOW_CONTROL "none"
+     * (default), "rtscts" or "xonxoff", and READ_TIMEOUT_MS and WRITE_TIMEOUT_MS, which
+     * follow the baud rate when 0 (default).
+     */
+    public static LineSettings lineSettings() {
+        LineSettings defaults = LineSettings.DEFAULT;
+        int baudRate = getInt("BAUD_RATE", defaults.getBaudRate());
+        int dataBits = getInt("DATA_BITS", 8);
+        String stop = getString("STOP_BITS", "1");
+        String parity = getString("PARITY", "none").toLowerCase();
+        return new LineSettings(baudRate > 0 ? baudRate : defaults.getBaudRate(),
+                dataBits >= 5 && dataBits <= 8 ? dataBits : 8,
+                stop.equals("2") ? SerialPort.TWO_STOP_BITS : stop.equals("1.5") ? SerialPort.ONE_POINT_FIVE_STOP_BITS : SerialPort.ONE_STOP_BIT,
+                parity.equals("odd") ? SerialPort.ODD_PARITY : parity.equals("even") ? SerialPort.EVEN_PARITY
+                        : parity.equals("mark") ? SerialPort.MARK_PARITY : parity.equals("space") ? SerialPort.SPACE_PARITY : SerialPort.NO_PARITY,
+                LineSettings.FlowControl.fromKey(getString("FLOW_CONTROL", "none")),
+                Math.max(0, getInt("READ_TIMEOUT_MS", 0)),
+                Math.max(0, getInt("WRITE_TIMEOUT_MS", 0)));
+    }
+
+    /**
+     * Lines each log window keeps before dropping the oldest.
+     */
+    public static int logMaxLines() {
+        return Math.max(1, getInt("LOG_MAX_LINES", 5000));
+    }
+
+    /**
+     * Longest gap between an append to a log window and its repaint; appends within the
+     * gap are folded into one update.
+     */
+    public static int logRepaintIntervalMs() {
+        return Math.max(1, getInt("LOG_REPAINT_MS", 33));
+    }
+
+    /**
+     * Period of the link statistics line, 0 (default) for none.
+     */
+    public static int statsIntervalMs() {
+        return Math.max(0, getInt("STATS_INTERVAL_MS", 0));
+    }
+
+    /**
+     * Threads shared by all links of a hub for sending.
+     */
+    public static int hubThreads() {
+        return Math.max(1, getInt("HUB_THREADS", 4));
+    }
+
+    /**
+     * How often the port list is re-enumerated to notice adapters being plugged in or out.
+     */
+    public static int portScanIntervalMs() {
+        return Math.max(100, getInt("PORT_SCAN_MS", 2000));
+    }
+
+    /**
+     * A channel for the named session. CHANNEL_SEED makes runs repeatable: every session
+     * gets its own generator, seeded from it and the session name. Without it each run
+     * is different. The rates default to the lab's 40% busy and 60% collision, with no
+     * bit errors.
+     */
+    public static ChannelModel channel(String sessionName) {
+        String seedValue = Config.getProperty("CHANNEL_SEED");
+        long seed;
+        try {
+            seed = seedValue != null ? Long.parseLong(seedValue.trim()) ^ (sessionName.hashCode() * 0x9E3779B97F4A7C15L)
+                    : System.nanoTime();
+        } catch (NumberFormatException e) {
+            seed = System.nanoTime();
+        }
+        return new SimulatedChannel(seed,
+                getDouble("CHANNEL_BUSY_RATE", 0.4),
+                getDouble("CHANNEL_COLLISION_RATE", 0.6),
+                getDouble("CHANNEL_FRAME_ERROR_RATE", 0.0),
+                getInt("CHANNEL_BURST_BITS", 1));
+    }
+
+    /**
+     * CSMA/CD backoff slot in microseconds; the lab's default is 200 ms.
+     */
+    public static long csmaSlotMicros() {
+        return Math.max(0, getInt("CSMA_SLOT_US", 200_000));
+    }
+
+    /**
+     * How long a sender waits before sensing a busy channel again, in microseconds.
+     */
+    public static long csmaSenseMicros() {
+        return Math.max(0, getInt("CSMA_SENSE_US", 1_000));
+    }
+
+    /**
+     * Directory for raw wire captures of every opened port, or null (default) for none.
+     */
+    public static String captureDir() {
+        String value = Config.getProperty("CAPTURE_DIR");
+        return value != null && !value.trim().isEmpty() ? value.trim() : null;
+    }
+
+    /**
+     * Directory of the receive journal, see {@link ReceiveJournal}, or null (default) for
+     * none.
+     */
+    public static String journalDir() {
+        return getString("JOURNAL_DIR", null);
+    }
+
+    /**
+     * Size after which the journal begins a new segment: JOURNAL_SEGMENT_MB, 16 by default.
+     */
+    public static long journalSegmentBytes() {
+        return Math.max(1, getInt("JOURNAL_SEGMENT_MB", 16)) * (1L << 20);
+    }
+
+    /**
+     * Journal segments kept before the oldest is deleted, 0 (default) to keep them all.
+     */
+    public static int journalMaxSegments() {
+        return Math.max(0, getInt("JOURNAL_MAX_SEGMENTS", 0));
+    }
+
+    /**
+     * How often the journal writes what was received, in milliseconds; a full batch is
+     * written at once.
+     */
+    public static long journalFlushMs() {
+        return Math.max(1, getInt("JOURNAL_FLUSH_MS", 200));
+    }
+
+    /**
+     * Selective-repeat ARQ window in frames, 0 (default) for plain unacknowledged
+     * sending. Capped at 32 and by what one ACK frame can report.
+     */
+    public static int arqWindow() {
+        return Math.max(0, getInt("ARQ_WINDOW", 0));
+    }
+
+    /**
+     * How long an ARQ sender waits for the ACK of a frame before sending it again.
+     */
+    public static long arqTimeoutMs() {
+        return Math.max(1, getInt("ARQ_TIMEOUT_MS", 3000));
+    }
+
+    /**
+     * Retransmissions of one frame before an ARQ sender gives the link up.
+     */
+    public static int arqMaxRetries() {
+        return Math.max(0, getInt("ARQ_MAX_RETRIES", 10));
+    }
+
+    static int getInt(String key, int defaultValue) {
+        String value = Config.getProperty(key);
+        if (value != null) {
+            try {
+                return Integer.parseInt(value.trim());
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+        return defaultValue;
+    }
+
+    static String getString(String key, String defaultValue) {
+        String value = Config.getProperty(key);
+        return value != null && !value.trim().isEmpty() ? value.trim() : defaultValue;
+    }
+
+    static double getDouble(String key, double defaultValue) {
+        String value = Config.getProperty(key);
+        if (value != null) {
+            try {
+                return Double.parseDouble(value.trim());
+            } catch (NumberFormatException e) {
+                return defaultValue;
+            }
+        }
+        return defaultValue;
+    }
+
+    static boolean getBoolean(String key, boolean defaultValue) {
+        String value = Config.getProperty(key);
+        return value != null ? Boolean.parseBoolean(value.trim()) : defaultValue;
+    }
+}
@@ -0,0 +1,132 @@
+package org.example;
+
+import javax.swing.AbstractListModel;
+import javax.swing.SwingUtilities;
+import javax.swing.Timer;
+
+/**
+ * Bounded log for the text windows. Text can be appended from any thread; it is parked
+ * in a pending buffer and folded into the model by a single-shot Swing timer, so a burst
+ * of appends costs one model update and one repaint per interval. Lines are kept in a
+ * ring of fixed size, oldest dropped first, and long lines are wrapped at a fixed width
+ * so a JList can render just the visible rows.
+ */
+@SuppressWarnings("serial") // Never serialized, like the rest of the GUI
+public final class LogModel extends AbstractListModel<String> {
+    private final String[] lines;
+    private final int maxLineLength;
+    private int first; // Ring index of the oldest line
+    private int count;
+    private final StringBuilder partial = new StringBuilder(); // Last line, not yet terminated
+    private String partialText = "";
+
+    private final Object lock = new Object();
+    private final StringBuilder pending = new StringBuilder(); // Guarded by lock
+    private boolean clearPending; // Guarded by lock
+    private boolean scheduled; // Guarded by lock
+    private final Timer flushTimer;
+    private Runnable onUpdate = () -> { };
+
+    public LogModel(int maxLines, int maxLineLength, int repaintIntervalMs) {
+        this.lines = new String[Math.max(1, maxLines)];
+        this.maxLineLength = Math.max(1, maxLineLength);
+        this.flushTimer = new Timer(repaintIntervalMs, e -> flush());
+        this.flushTimer.setRepeats(false);
+    }
+
+    public int getMaxLineLength() {
+        return maxLineLength;
+    }
+
+    /**
+     * Runs on the EDT after each batch has been folded in, e.g. to keep the view scrolled.
+     */
+    public void setOnUpdate(Runnable onUpdate) {
+        this.onUpdate = onUpdate;
+    }
+
+    public void append(String text) {
+        synchronized (lock) {
+            pending.append(text);
+            schedule();
+        }
+    }
+
+    public void setText(String text) {
+        synchronized (lock) {
+            pending.setLength(0);
+            pending.append(text);
+            clearPending = true;
+            schedule();
+        }
+    }
+
+    @Override
+    public int getSize() {
+        return count + (partial.length() > 0 ? 1 : 0);
+    }
+
+    @Override
+    public String getElementAt(int index) {
+        return index < count ? lines[(first + index) % lines.length] : partialText;
+    }
+
+    private void schedule() {
+        if (!scheduled) {
+            scheduled = true;
+            SwingUtilities.invokeLater(flushTimer::restart);
+        }
+    }
+
+    private void flush() {
+        String text;
+        boolean clear;
+        synchronized (lock) {
+            text = pending.toString();
+            pending.setLength(0);
+            clear = clearPending;
+            clearPending = false;
+            scheduled = false;
+        }
+
+        int oldSize = getSize();
+        if (clear) {
+            first = 0;
+            count = 0;
+            partial.setLength(0);
+        }
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '\n') {
+                endLine();
+            } else if (c != '\r') {
+                partial.append(c);
+                if (partial.length() >= maxLineLength) {
+                    endLine();
+                }
+            }
+        }
+        partialText = partial.toString();
+
+        int newSize = getSize();
+        if (newSize < oldSize) {
+            fireIntervalRemoved(this, newSize, oldSize - 1);
+        }
+        if (newSize > 0) {
+            fireContentsChanged(this, 0, newSize - 1); // The JList only repaints the visible rows
+        }
+        onUpdate.run();
+    }
+
+    private void endLine() {
+        String line = partial.toString();
+        partial.setLength(0);
+        if (count < lines.length) {
+            lines[(first + count) % lines.length] = line;
+            count++;
+        } else {
+            lines[first] = line; // Full: overwrite the oldest
+            first = (first + 1) % lines.length;
+        }
+    }
+}
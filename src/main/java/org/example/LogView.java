@@ -0,0 +1,42 @@
+package org.example;
+
+import javax.swing.JList;
+import javax.swing.JScrollBar;
+import javax.swing.JScrollPane;
+import javax.swing.SwingUtilities;
+import java.awt.FontMetrics;
+
+/**
+ * Scrolling view of a {@link LogModel}. Rows have a fixed size so the list never
+ * measures off-screen lines, and the view follows new output while it is scrolled to
+ * the bottom.
+ */
+@SuppressWarnings("serial") // Never serialized, like the rest of the GUI
+public final class LogView extends JScrollPane {
+    private final LogModel model;
+
+    public LogView(LogModel model) {
+        this.model = model;
+        JList<String> list = new JList<>(model);
+        FontMetrics metrics = list.getFontMetrics(list.getFont());
+        list.setFixedCellHeight(metrics.getHeight());
+        list.setFixedCellWidth(metrics.charWidth('m') * model.getMaxLineLength());
+        setViewportView(list);
+
+        model.setOnUpdate(() -> {
+            JScrollBar bar = getVerticalScrollBar();
+            boolean atBottom = bar.getValue() + bar.getVisibleAmount() >= bar.getMaximum() - list.getFixedCellHeight();
+            if (atBottom) {
+                SwingUtilities.invokeLater(() -> {
+                    if (model.getSize() > 0) {
+                        list.ensureIndexIsVisible(model.getSize() - 1); // After the list has been laid out again
+                    }
+                });
+            }
+        });
+    }
+
+    public LogModel getModel() {
+        return model;
+    }
+}
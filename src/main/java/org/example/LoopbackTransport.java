@@ -0,0 +1,46 @@
+package org.example;
+
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * In-process null-modem cable. Endpoints {@code loop:0} and {@code loop:1} are wired
+ * together, as are {@code loop:2} and {@code loop:3}, and so on. Writes are paced to the
+ * simulated baud rate; 0 means as fast as memory allows.
+ */
+public final class LoopbackTransport extends PipeTransport {
+    public static final String PREFIX = "loop:";
+    private static final int PIPE_CAPACITY = 64 * 1024;
+    private static final Map<Integer, BytePipe> pipes = new HashMap<>(); // Keyed by the receiving endpoint
+
+    private final OutputStream output;
+
+    private LoopbackTransport(String name, BytePipe incoming, BytePipe outgoing) {
+        super(name, incoming);
+        this.output = outgoing.outputStream();
+    }
+
+    /**
+     * Opens endpoint {@code loop:<number>}. Both ends of a pair must be opened with the
+     * same baud rate; the pipes live as long as the process.
+     */
+    public static synchronized LoopbackTransport open(String name, int baudRate) {
+        int endpoint = LinkPorts.portNumber(name);
+        return new LoopbackTransport(name, pipe(endpoint, baudRate), pipe(endpoint ^ 1, baudRate));
+    }
+
+    private static BytePipe pipe(int endpoint, int baudRate) {
+        BytePipe pipe = pipes.get(endpoint);
+        if (pipe == null) {
+            pipe = new BytePipe(PIPE_CAPACITY, baudRate);
+            pipes.put(endpoint, pipe);
+        }
+        return pipe;
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return output;
+    }
+}
@@ -0,0 +1,100 @@
+package org.example;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Base for transports whose incoming bytes are staged in a {@link BytePipe}. A daemon
+ * thread per transport waits on the pipe and runs the data listener.
+ */
+abstract class PipeTransport implements Transport {
+    private final String name;
+    final BytePipe incoming;
+    private final InputStream input;
+    private volatile Runnable listener;
+    private volatile boolean open = true;
+    private volatile LineSettings lineSettings = LineSettings.DEFAULT;
+    private Thread listenerThread;
+
+    PipeTransport(String name, BytePipe incoming) {
+        this.name = name;
+        this.incoming = incoming;
+        this.input = incoming.inputStream();
+    }
+
+    @Override
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public boolean isOpen() {
+        return open;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return input;
+    }
+
+    @Override
+    public abstract OutputStream getOutputStream();
+
+    @Override
+    public int bytesAvailable() {
+        return incoming.available();
+    }
+
+    @Override
+    public LineSettings getLineSettings() {
+        return lineSettings;
+    }
+
+    @Override
+    public boolean setLineSettings(LineSettings settings) {
+        lineSettings = settings;
+        return true;
+    }
+
+    @Override
+    public synchronized void setDataListener(Runnable onDataAvailable) {
+        listener = onDataAvailable;
+        if (listenerThread == null) {
+            listenerThread = new Thread(this::dispatch, name + "-reader");
+            listenerThread.setDaemon(true);
+            listenerThread.start();
+        }
+    }
+
+    @Override
+    public void removeDataListener() {
+        listener = null;
+    }
+
+    @Override
+    public synchronized void close() {
+        open = false;
+        listener = null;
+        if (listenerThread != null) {
+            listenerThread.interrupt();
+            listenerThread = null;
+        }
+    }
+
+    private void dispatch() {
+        try {
+            while (open) {
+                if (!incoming.awaitData(100, TimeUnit.MILLISECONDS)) {
+                    return;
+                }
+                Runnable current = listener;
+                if (current != null && incoming.available() > 0) {
+                    current.run();
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package org.example;
+
+import com.fazecast.jSerialComm.SerialPort;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keeps a cached list of the ports on the machine, refreshed on a background thread.
+ * Enumerating is cheap and done every interval; opening a port to see whether it is free
+ * is not, and it can disturb whoever holds the port, so each serial port is probed once
+ * when it first appears. Listeners hear about changes on the discovery thread.
+ */
+public final class PortDiscovery implements AutoCloseable {
+    private static final Logger logger = Logger.getLogger(PortDiscovery.class.getName());
+
+    /**
+     * What is known about one port.
+     */
+    public static final class PortInfo {
+        private final String name;
+        private final String description;
+        private final boolean available;
+
+        PortInfo(String name, String description, boolean available) {
+            this.name = name;
+            this.description = description;
+            this.available = available;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public String getDescription() {
+            return description;
+        }
+
+        /**
+         * Whether the port could be opened when it was first seen.
+         */
+        public boolean isAvailable() {
+            return available;
+        }
+
+        @Override
+        public String toString() {
+            return name;
+        }
+    }
+
+    private final ScheduledExecutorService executor = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "port-discovery");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final List<Consumer<List<PortInfo>>> listeners = new CopyOnWriteArrayList<>();
+    private final Map<String, PortInfo> known = new HashMap<>(); // Only touched by the discovery thread
+    private volatile List<PortInfo> ports = Collections.emptyList();
+
+    /**
+     * Starts scanning right away and then every interval.
+     */
+    public void start(long intervalMs) {
+        executor.scheduleWithFixedDelay(this::scan, 0, intervalMs, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Scans as soon as possible without waiting for the next interval.
+     */
+    public void refresh() {
+        executor.execute(this::scan);
+    }
+
+    /**
+     * The latest scan; never blocks.
+     */
+    public List<PortInfo> getPorts() {
+        return ports;
+    }
+
+    public void addListener(Consumer<List<PortInfo>> listener) {
+        listeners.add(listener);
+    }
+
+    @Override
+    public void close() {
+        executor.shutdownNow();
+    }
+
+    private void scan() {
+        try {
+            Set<String> names = new LinkedHashSet<>();
+            Map<String, SerialPort> serialPorts = new HashMap<>();
+            for (SerialPort port : SerialPort.getCommPorts()) {
+                names.add(port.getSystemPortName());
+                serialPorts.put(port.getSystemPortName(), port);
+            }
+            names.addAll(LinkPorts.extraPortNames());
+
+            if (names.equals(known.keySet())) {
+                return;
+            }
+            known.keySet().retainAll(names);
+            for (String name : names) {
+                if (!known.containsKey(name)) {
+                    SerialPort port = serialPorts.get(name);
+                    known.put(name, port != null ? probe(port) : new PortInfo(name, name, true));
+                }
+            }
+
+            List<PortInfo> snapshot = new ArrayList<>(names.size());
+            for (String name : names) {
+                snapshot.add(known.get(name));
+            }
+            ports = Collections.unmodifiableList(snapshot);
+            for (Consumer<List<PortInfo>> listener : listeners) {
+                listener.accept(ports);
+            }
+        } catch (RuntimeException e) {
+            logger.log(Level.WARNING, "Port scan failed", e);
+        }
+    }
+
+    private static PortInfo probe(SerialPort port) {
+        boolean isOpen = port.openPort();
+        if (isOpen) {
+            port.closePort();
+        }
+        return new PortInfo(port.getSystemPortName(), port.getDescriptivePortName(), isOpen);
+    }
+}
@@ -0,0 +1,81 @@
+package org.example;
+
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Transport over a tty device file, e.g. one side of a pty pair made with
+ * {@code socat pty,raw,echo=0 pty,raw,echo=0} or a tty0tty {@code /dev/tnt*} node.
+ * Opened as {@code pty:/dev/pts/3}. The line is switched to raw mode with stty.
+ */
+public final class PtyTransport extends PipeTransport {
+    public static final String PREFIX = "pty:";
+    private static final Logger logger = Logger.getLogger(PtyTransport.class.getName());
+    private static final int PIPE_CAPACITY = 64 * 1024;
+
+    private final InputStream device;
+    private final OutputStream output;
+
+    private PtyTransport(String name, String path) throws IOException {
+        super(name, new BytePipe(PIPE_CAPACITY, 0));
+        device = new FileInputStream(path);
+        output = new FileOutputStream(path);
+        Thread pump = new Thread(this::pump, name + "-pump");
+        pump.setDaemon(true);
+        pump.start();
+    }
+
+    /**
+     * @return the opened transport, or null if the device could not be opened
+     */
+    public static PtyTransport open(String name) {
+        String path = name.substring(PREFIX.length());
+        try {
+            new ProcessBuilder("stty", "-F", path, "raw", "-echo").inheritIO().start().waitFor();
+            return new PtyTransport(name, path);
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Failed to open " + path, e);
+            return null;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return output;
+    }
+
+    @Override
+    public synchronized void close() {
+        super.close();
+        incoming.close();
+        try {
+            device.close();
+            output.close();
+        } catch (IOException e) {
+            logger.log(Level.FINE, "Error closing " + getName(), e);
+        }
+    }
+
+    // Blocking reads from the device, staged in the pipe for the listener thread
+    private void pump() {
+        byte[] buffer = new byte[4096];
+        try {
+            int numRead;
+            while (isOpen() && (numRead = device.read(buffer)) != -1) {
+                incoming.write(buffer, 0, numRead);
+            }
+        } catch (IOException e) {
+            if (isOpen()) {
+                logger.log(Level.WARNING, "Error reading from " + getName(), e);
+            }
+        }
+    }
+}
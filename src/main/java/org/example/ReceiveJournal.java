@@ -0,0 +1,319 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Deque;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Append-only journal of received data on disk, in segments of a bounded size, each with
+ * a sparse index for {@link JournalReader} to seek by sequence number and time:
+ *
+ * <pre>
+ * segment: magic "OKRJ", int version, long first sequence, then records:
+ *          long sequence, long epoch milliseconds, byte destination, byte source,
+ *          byte flags, int length, length bytes
+ * index:   long sequence, long epoch milliseconds, int offset of the record in the segment,
+ *          one entry per {@link #INDEX_SPACING} bytes of records
+ * </pre>
+ *
+ * Both are named after the first sequence of the segment. {@link #append} only copies the
+ * record into a batch in memory; a writer thread of the journal's own writes the batch
+ * every flush interval, or at once when it fills up, while the next one fills. If the disk
+ * falls so far behind that both batches are full, records are dropped and counted rather
+ * than hold up the reader thread of a port.
+ *
+ * A journal opened on a directory that has one already carries on its sequence numbers in
+ * a new segment. Buffered records are written on {@link #close}, and at exit.
+ */
+public final class ReceiveJournal implements Closeable {
+    private static final Logger logger = Logger.getLogger(ReceiveJournal.class.getName());
+    public static final int MAGIC = 0x4F4B524A; // "OKRJ"
+    public static final int VERSION = 1;
+    public static final int CORRECTED = 1;
+    public static final int CORRUPT = 2;
+    public static final int COMPRESSED = 4; // Inflated from compressed frames
+    static final int HEADER_LENGTH = 16;
+    static final int RECORD_HEADER_LENGTH = 23;
+    static final int INDEX_ENTRY_LENGTH = 20;
+    static final int INDEX_SPACING = 4096;
+    static final String SEGMENT_SUFFIX = ".seg";
+    static final String INDEX_SUFFIX = ".idx";
+    private static final int BATCH_CAPACITY = 64 << 10;
+
+    private final Path directory;
+    private final long segmentBytes;
+    private final int maxSegments;
+    private final ScheduledExecutorService writer;
+    private final Thread shutdownHook = new Thread(this::closeQuietly, "journal-shutdown");
+    // Guarded by this: the reader threads that append and the writer that takes batches
+    private ByteBuffer filling = ByteBuffer.allocate(BATCH_CAPACITY);
+    private ByteBuffer spare = ByteBuffer.allocate(BATCH_CAPACITY); // Null while the writer has it
+    private ByteBuffer full; // Waiting for the writer
+    private long nextSequence;
+    private long lastMillis;
+    private long droppedRecords;
+    private boolean closed;
+    // Only used on the writer thread
+    private final Deque<Long> segments = new ArrayDeque<>(); // First sequence of each segment on disk, oldest first
+    private final ByteBuffer indexBatch = ByteBuffer.allocate(BATCH_CAPACITY / INDEX_SPACING * INDEX_ENTRY_LENGTH + INDEX_ENTRY_LENGTH * 2);
+    private FileChannel segment;
+    private FileChannel index;
+    private long segmentSize;
+    private long indexedAt = -1; // Segment size at the last index entry
+    private boolean failed;
+
+    private ReceiveJournal(Path directory, long segmentBytes, int maxSegments, long nextSequence, List<Long> existing, long flushMs) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+        this.maxSegments = maxSegments;
+        this.nextSequence = nextSequence;
+        this.segments.addAll(existing);
+        this.writer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "journal-writer");
+            thread.setDaemon(true);
+            return thread;
+        });
+        writer.scheduleWithFixedDelay(this::writeBatch, flushMs, flushMs, TimeUnit.MILLISECONDS);
+        Runtime.getRuntime().addShutdownHook(shutdownHook);
+    }
+
+    /**
+     * Opens the journal in the directory, creating it if need be.
+     *
+     * @param segmentBytes size after which a new segment is begun
+     * @param maxSegments segments kept, the oldest deleted beyond that; 0 keeps all
+     * @param flushMs how often buffered records are written
+     */
+    public static ReceiveJournal open(Path directory, long segmentBytes, int maxSegments, long flushMs) throws IOException {
+        Files.createDirectories(directory);
+        List<Long> existing = JournalReader.segments(directory);
+        long nextSequence = existing.isEmpty() ? 0 : JournalReader.lastSequence(directory, existing.get(existing.size() - 1)) + 1;
+        return new ReceiveJournal(directory, Math.max(HEADER_LENGTH + RECORD_HEADER_LENGTH + FrameFormat.MAX_PAYLOAD, segmentBytes),
+                Math.max(0, maxSegments), nextSequence, existing, Math.max(1, flushMs));
+    }
+
+    /**
+     * Opens the journal of the port in JOURNAL_DIR, a directory per port, with the settings
+     * from config.properties; null when journalling is off or the directory cannot be used.
+     */
+    public static ReceiveJournal openConfigured(String portName) {
+        String dir = LinkSettings.journalDir();
+        if (dir == null) {
+            return null;
+        }
+        Path directory = Paths.get(dir, portName.replaceAll("[^A-Za-z0-9]+", "_"));
+        try {
+            return open(directory, LinkSettings.journalSegmentBytes(), LinkSettings.journalMaxSegments(),
+                    LinkSettings.journalFlushMs());
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Journal disabled, cannot open " + directory, e);
+            return null;
+        }
+    }
+
+    public Path getDirectory() {
+        return directory;
+    }
+
+    /**
+     * Sequence number the next record gets.
+     */
+    public synchronized long getNextSequence() {
+        return nextSequence;
+    }
+
+    public synchronized long getDroppedRecords() {
+        return droppedRecords;
+    }
+
+    /**
+     * Copies the record into the current batch; never waits for the disk.
+     *
+     * @param flags {@link #CORRECTED}, {@link #CORRUPT}, {@link #COMPRESSED}
+     */
+    public synchronized void append(int destination, int source, int flags, byte[] buffer, int offset, int length) {
+        if (closed) {
+            return;
+        }
+        int size = RECORD_HEADER_LENGTH + length;
+        if (filling.remaining() < size) {
+            if (spare == null || full != null || size > BATCH_CAPACITY) {
+                droppedRecords++;
+                return;
+            }
+            full = filling;
+            filling = spare;
+            spare = null;
+            writer.execute(this::writeBatch);
+        }
+        lastMillis = Math.max(lastMillis, System.currentTimeMillis()); // Kept in order for seeks by time
+        filling.putLong(nextSequence++).putLong(lastMillis).put((byte) destination).put((byte) source).put((byte) flags)
+                .putInt(length).put(buffer, offset, length);
+    }
+
+    /**
+     * Writes what has been appended so far, for a query that has to see it.
+     */
+    public void flush() throws IOException {
+        try {
+            writer.submit(() -> {
+                writeBatch();
+                writeBatch(); // A batch that was full when the first call took the filling one
+            }).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while flushing the journal");
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        } catch (RejectedExecutionException e) {
+            // Closed, so written already
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            closed = true;
+        }
+        try {
+            Runtime.getRuntime().removeShutdownHook(shutdownHook);
+        } catch (IllegalStateException e) {
+            // Closing from the hook itself
+        }
+        writer.shutdown();
+        try {
+            writer.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        writeBatch(); // Whatever was appended before closing; the writer is done
+        writeBatch();
+        if (segment != null) {
+            segment.force(false);
+            segment.close();
+            index.close();
+        }
+    }
+
+    private void closeQuietly() {
+        try {
+            close();
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error closing journal in " + directory, e);
+        }
+    }
+
+    // Writes one batch: one waiting, or else the one being filled
+    private void writeBatch() {
+        ByteBuffer batch;
+        synchronized (this) {
+            if (full != null) {
+                batch = full;
+                full = null;
+            } else if (filling.position() > 0 && spare != null) {
+                batch = filling;
+                filling = spare;
+                spare = null;
+            } else {
+                return;
+            }
+        }
+        try {
+            if (!failed) {
+                batch.flip();
+                write(batch);
+            }
+        } catch (IOException e) {
+            failed = true; // Disk full or similar; what is on disk stays readable
+            logger.log(Level.WARNING, "Journal in " + directory + " stopped", e);
+        } finally {
+            batch.clear();
+            synchronized (this) {
+                spare = batch;
+            }
+        }
+    }
+
+    private void write(ByteBuffer batch) throws IOException {
+        int chunkStart = batch.position();
+        for (int position = chunkStart; position < batch.limit(); ) {
+            int size = RECORD_HEADER_LENGTH + batch.getInt(position + 19);
+            if (segment == null || segmentSize > HEADER_LENGTH && segmentSize + size > segmentBytes) {
+                writeChunk(batch, chunkStart, position);
+                chunkStart = position;
+                rotate(batch.getLong(position));
+            }
+            if (indexedAt < 0 || segmentSize - indexedAt >= INDEX_SPACING) {
+                indexBatch.putLong(batch.getLong(position)).putLong(batch.getLong(position + 8)).putInt((int) segmentSize);
+                indexedAt = segmentSize;
+            }
+            segmentSize += size;
+            position += size;
+        }
+        writeChunk(batch, chunkStart, batch.limit());
+    }
+
+    // Records first, then the index entries that point at them
+    private void writeChunk(ByteBuffer batch, int from, int to) throws IOException {
+        if (from < to) {
+            ByteBuffer chunk = batch.duplicate();
+            chunk.limit(to).position(from);
+            while (chunk.hasRemaining()) {
+                segment.write(chunk);
+            }
+        }
+        if (indexBatch.position() > 0) {
+            indexBatch.flip();
+            while (indexBatch.hasRemaining()) {
+                index.write(indexBatch);
+            }
+            indexBatch.clear();
+        }
+    }
+
+    private void rotate(long firstSequence) throws IOException {
+        if (segment != null) {
+            segment.force(false);
+            segment.close();
+            index.close();
+        }
+        Path segmentFile = directory.resolve(JournalReader.fileName(firstSequence, SEGMENT_SUFFIX));
+        segment = FileChannel.open(segmentFile, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        index = FileChannel.open(directory.resolve(JournalReader.fileName(firstSequence, INDEX_SUFFIX)),
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE);
+        ByteBuffer header = ByteBuffer.allocate(HEADER_LENGTH);
+        header.putInt(MAGIC).putInt(VERSION).putLong(firstSequence).flip();
+        while (header.hasRemaining()) {
+            segment.write(header);
+        }
+        segmentSize = HEADER_LENGTH;
+        indexedAt = -1;
+        if (segments.isEmpty() || segments.peekLast() != firstSequence) {
+            segments.addLast(firstSequence); // Not when it replaces an empty one left by the last run
+        }
+        while (maxSegments > 0 && segments.size() > maxSegments) {
+            long oldest = segments.removeFirst();
+            Files.deleteIfExists(directory.resolve(JournalReader.fileName(oldest, INDEX_SUFFIX)));
+            Files.deleteIfExists(directory.resolve(JournalReader.fileName(oldest, SEGMENT_SUFFIX)));
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package org.example;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Receive side of a link. The transport calls back on its reader thread when bytes
+ * arrive; that thread is the only reader of the transport and the decoder, and it also
+ * checks and corrects each frame. Frames go into a bounded
+ * queue, and the consumer is signalled once per batch rather than once per frame.
+ * With a {@link FrameRouter} the decoder only decodes frames for the routed addresses.
+ * Compressed frames are handed on as they came, still marked, for {@link ArqReceiver}
+ * to inflate once they are back in order. With a {@link ReceiveJournal} set, whatever is
+ * handed on is also appended to it, with whether the frame had to be corrected.
+ */
+public final class ReceiverSession {
+    private static final Logger logger = Logger.getLogger(ReceiverSession.class.getName());
+
+    private final Transport transport;
+    private FrameDecoder decoder; // Only used on the reader thread
+    private volatile FrameFormat nextFormat;
+    private ChannelModel channel;
+    private volatile boolean discardCorrupt;
+    private final BlockingQueue<Frame> frames;
+    private final Runnable onFramesAvailable;
+    private final FrameDecoder.Handler decoded = this::onFrame; // For the decoder, made once
+    private final FrameDecoder.Handler handler; // Gets the frames once checked
+    private volatile ReceiveJournal journal;
+    private int frameFlags; // Journal flags of the frame in hand, only used on the reader thread
+    private final FrameRouter router; // Null to decode frames for every address
+    private long skippedFrames; // Of the current decoder, as far as reported
+    private final AtomicBoolean signalled = new AtomicBoolean();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final LinkMetrics metrics = LinkMetrics.global();
+    private final byte[] recoded = new byte[FrameFormat.MAX_PAYLOAD]; // Only used on the reader thread
+
+    /**
+     * Queued mode: frames are copied into a bounded queue and the consumer is signalled.
+     */
+    public ReceiverSession(Transport transport, FrameFormat format, int queueCapacity, Runnable onFramesAvailable) {
+        this.transport = transport;
+        this.decoder = new FrameDecoder(format);
+        this.frames = new ArrayBlockingQueue<>(queueCapacity);
+        this.onFramesAvailable = onFramesAvailable;
+        this.handler = this::enqueue;
+        this.router = null;
+        this.channel = LinkSettings.channel(transport.getName());
+    }
+
+    /**
+     * Direct mode: checked frames are handed to the handler on the reader thread, straight
+     * from the decoder's buffer, so the steady state allocates nothing per frame.
+     */
+    public ReceiverSession(Transport transport, FrameFormat format, FrameDecoder.Handler handler) {
+        this(transport, format, handler, null);
+    }
+
+    /**
+     * Routed mode: direct mode for the endpoints in the routing table, with frames for
+     * other addresses skipped by the decoder.
+     */
+    public ReceiverSession(Transport transport, FrameFormat format, FrameRouter router) {
+        this(transport, format, router, router);
+    }
+
+    private ReceiverSession(Transport transport, FrameFormat format, FrameDecoder.Handler handler, FrameRouter router) {
+        this.transport = transport;
+        this.decoder = new FrameDecoder(format);
+        this.frames = new ArrayBlockingQueue<>(1);
+        this.onFramesAvailable = () -> { };
+        this.handler = handler;
+        this.router = router;
+        this.channel = LinkSettings.channel(transport.getName());
+    }
+
+    /**
+     * Replaces the channel drawn from the settings; call before {@link #start}.
+     */
+    public void setChannel(ChannelModel channel) {
+        this.channel = channel;
+    }
+
+    public String getPortName() {
+        return transport.getName();
+    }
+
+    /**
+     * Drops frames whose FCS does not match, after FEC correction if any, instead of
+     * passing them on; for protocols that recover lost frames themselves.
+     */
+    public void setDiscardCorrupt(boolean discardCorrupt) {
+        this.discardCorrupt = discardCorrupt;
+    }
+
+    /**
+     * Appends every frame handed on to the journal; null to stop.
+     */
+    public void setJournal(ReceiveJournal journal) {
+        this.journal = journal;
+    }
+
+    /**
+     * Switches the frame format; takes effect on the reader thread with the next bytes
+     * received, and a frame that is half way through is dropped.
+     */
+    public void setFormat(FrameFormat format) {
+        nextFormat = format;
+    }
+
+    public void start() {
+        transport.setDataListener(this::onDataAvailable);
+    }
+
+    public void stop() {
+        transport.removeDataListener();
+        frames.clear();
+    }
+
+    /**
+     * Moves all queued frames, already checked and corrected, into the collection.
+     * Frames queued after this call signal the consumer again.
+     */
+    public int drainTo(Collection<? super Frame> target) {
+        signalled.set(false);
+        return frames.drainTo(target);
+    }
+
+    /**
+     * Blocking alternative to {@link #drainTo} for consumers that do not use the signal.
+     */
+    public Frame poll(long timeout, TimeUnit unit) throws InterruptedException {
+        return frames.poll(timeout, unit);
+    }
+
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    private void onDataAvailable() {
+        FrameFormat format = nextFormat;
+        if (format != null) {
+            nextFormat = null;
+            decoder = new FrameDecoder(format);
+            skippedFrames = 0;
+        }
+        if (router != null) {
+            decoder.setAcceptedAddresses(router.getAddresses());
+        }
+        try {
+            while (transport.bytesAvailable() > 0) {
+                int numRead = decoder.readFrom(transport.getInputStream(), decoded);
+                if (numRead <= 0) {
+                    break;
+                }
+                metrics.bytesReceived(numRead);
+            }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Error reading from " + transport.getName(), e);
+        }
+        long skipped = decoder.getSkippedFrames();
+        if (skipped != skippedFrames) {
+            metrics.framesSkipped(skipped - skippedFrames);
+            skippedFrames = skipped;
+        }
+    }
+
+    private void onFrame(int destination, int source, byte[] buffer, int offset, int length, byte fcs) {
+        int dataLength = check(destination, source, buffer, offset, length, fcs);
+        if (dataLength < 0) {
+            return;
+        }
+        destination &= ~FrameFormat.FEC_FLAG;
+        source &= FrameFormat.SOURCE_MASK;
+        deliver(destination, source, buffer, offset, dataLength, fcs);
+    }
+
+    private void deliver(int destination, int source, byte[] buffer, int offset, int length, byte fcs) {
+        ReceiveJournal current = journal;
+        if (current != null) {
+            current.append(destination & FrameFormat.ADDRESS_MASK, source, frameFlags, buffer, offset, length);
+        }
+        handler.onFrame(destination, source, buffer, offset, length, fcs);
+    }
+
+    private void enqueue(int destination, int source, byte[] buffer, int offset, int length, byte fcs) {
+        Frame frame = new Frame(destination, source, Arrays.copyOfRange(buffer, offset, offset + length), fcs);
+        if (!frames.offer(frame)) {
+            droppedFrames.incrementAndGet(); // Consumer is too slow, drop rather than stall the port
+            metrics.frameDropped();
+        }
+        if (signalled.compareAndSet(false, true)) {
+            onFramesAvailable.run();
+        }
+    }
+
+    // Checks and corrects the payload in place; returns the length of the data in it, which FEC frames decode
+    // to, or -1 if the frame is corrupt and to be discarded
+    private int check(int destination, int source, byte[] buffer, int offset, int length, byte receivedFcs) {
+        int flipped = channel.corrupt(buffer, offset, length);
+        if (flipped > 0) {
+            metrics.errorInjected(flipped);
+        }
+        boolean fec = (destination & FrameFormat.FEC_FLAG) != 0;
+        boolean intact = Fcs.calculate(buffer, offset, length) == receivedFcs;
+        frameFlags = 0;
+        if (!intact) {
+            metrics.fcsFailure();
+            frameFlags = ReceiveJournal.CORRUPT; // Unless corrected below
+            if (!fec) {
+                // Over the whole payload, before the length byte at its end is trusted
+                intact = Fcs.correct(buffer, offset, length, receivedFcs);
+                metrics.correction(intact);
+                if (intact) {
+                    frameFlags = ReceiveJournal.CORRECTED;
+                }
+            }
+        }
+        int dataLength = dataLength(source, buffer, offset, length, fec);
+        if (dataLength < 0) {
+            if (intact) {
+                metrics.fcsFailure(); // Damaged where the FCS did not see it
+                intact = false;
+                frameFlags = ReceiveJournal.CORRUPT;
+            }
+            if (discardCorrupt) {
+                return -1;
+            }
+            dataLength = fec ? Hamming.decodedLength(length - 1) : length - 1; // All but the length byte
+        }
+        if (fec) {
+            int codedLength = Hamming.encodedLength(dataLength);
+            Hamming.decode(buffer, offset, codedLength);
+            if (!intact) {
+                // Coding the result again must give what the sender took the FCS over, padding and all
+                Hamming.encode(buffer, offset, dataLength, recoded, 0);
+                System.arraycopy(buffer, offset + codedLength, recoded, codedLength, length - codedLength);
+                intact = Fcs.calculate(recoded, 0, length) == receivedFcs;
+                metrics.correction(intact);
+                frameFlags = intact ? ReceiveJournal.CORRECTED : ReceiveJournal.CORRUPT;
+            }
+            if (!intact && discardCorrupt) {
+                return -1;
+            }
+            metrics.frameReceived(dataLength);
+            return dataLength;
+        }
+        if (!intact && discardCorrupt) {
+            return -1;
+        }
+        metrics.frameReceived(dataLength);
+        return dataLength;
+    }
+
+    // Data bytes in the payload: as many as the length byte at the end of the padding of a fixed frame says, or
+    // all of it; -1 if that length byte cannot be right
+    private static int dataLength(int source, byte[] buffer, int offset, int length, boolean fec) {
+        if ((source & FrameFormat.PADDED_FLAG) == 0) {
+            return fec ? Hamming.decodedLength(length) : length;
+        }
+        int dataLength = buffer[offset + length - 1] & 0xFF;
+        return (fec ? Hamming.encodedLength(dataLength) : dataLength) < length ? dataLength : -1;
+    }
+}
@@ -0,0 +1,432 @@
+package org.example;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.Queue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Send side of a link: splits a message into frames and puts each one on the line
+ * with the simulated CSMA/CD channel (carrier sense, collision, truncated binary
+ * exponential backoff). Nothing sleeps: a busy channel or a backoff reschedules the
+ * frame on a shared {@link ScheduledExecutorService}, so its threads serve other
+ * sessions in the meantime. Messages on one session go out one after another and
+ * frames keep their order, since the receiver has no sequence numbers to restore it.
+ * A frame is cut short where the framing would garble its data, see
+ * {@link FrameEncoder#isAmbiguous}.
+ * In batched mode the transmissions are gathered in one reusable buffer and written
+ * with a single call when it fills up, before each backoff and at the end of the
+ * message, instead of a write and flush per frame. Messages go to
+ * {@link FrameFormat#BROADCAST} unless sent to an address of their own. Compression is
+ * left to {@link ArqSender}: a deflate stream does not survive the frames a plain link
+ * loses or repeats.
+ */
+public final class SenderSession {
+    public static final int MAX_ATTEMPTS = 16;
+    public static final int BACKOFF_LIMIT = 10; // Backoff exponent stops growing here
+    private static final int BATCH_CAPACITY = 8192;
+
+    /**
+     * Progress callbacks, invoked on a scheduler thread, one at a time per session.
+     */
+    public interface Listener {
+        /**
+         * The frame is only valid for the duration of the call.
+         */
+        void onPacket(int packetNumber, byte[] buffer, int offset, int length);
+
+        void onCollision(int packetNumber);
+
+        void onFailed(int packetNumber);
+    }
+
+    private final Transport transport;
+    private final ScheduledExecutorService scheduler;
+    private final LinkMetrics metrics = LinkMetrics.global();
+    private final LongAdder framesSent = new LongAdder(); // This session's share of the metrics counter
+    private final Queue<Transmission> queue = new ArrayDeque<>(); // Guarded by this
+    private Transmission current; // Guarded by this
+    private FrameEncoder encoder;
+    private byte[] frame;
+    private final byte[] chunk = new byte[FrameFormat.MAX_PAYLOAD]; // Data of a frame from a buffer without an array
+    private ByteBuffer batch;
+    private long[] batchedSince; // Encode time of each frame in the batch that got through
+    private int[] batchedPayload;
+    private int batchedFrames;
+    private volatile FrameFormat nextFormat;
+    private volatile boolean batched;
+    private volatile int sourceAddress = -1; // -1 for the port number
+    private ChannelModel channel;
+    private long slotNanos;
+    private long senseNanos;
+
+    public SenderSession(Transport transport, FrameFormat format) {
+        this(transport, format, SharedScheduler.INSTANCE);
+    }
+
+    /**
+     * @param scheduler runs the frames of this session; may be shared with other sessions
+     */
+    public SenderSession(Transport transport, FrameFormat format, ScheduledExecutorService scheduler) {
+        this.transport = transport;
+        this.scheduler = scheduler;
+        this.channel = LinkSettings.channel(transport.getName());
+        this.slotNanos = TimeUnit.MICROSECONDS.toNanos(LinkSettings.csmaSlotMicros());
+        this.senseNanos = TimeUnit.MICROSECONDS.toNanos(LinkSettings.csmaSenseMicros());
+        useFormat(format);
+    }
+
+    /**
+     * Switches the frame format from the next message on; a message being sent keeps
+     * the format it started with.
+     */
+    public void setFormat(FrameFormat format) {
+        nextFormat = format;
+    }
+
+    /**
+     * Replaces the channel drawn from the settings; not while a message is being sent.
+     */
+    public void setChannel(ChannelModel channel) {
+        this.channel = channel;
+    }
+
+    /**
+     * Backoff slot and the wait before sensing a busy channel again; not while a message
+     * is being sent.
+     */
+    public void setTiming(long slot, long sense, TimeUnit unit) {
+        this.slotNanos = unit.toNanos(slot);
+        this.senseNanos = unit.toNanos(sense);
+    }
+
+    /**
+     * Frames this session has written out without a collision, counted where
+     * {@link LinkMetrics#getFramesSent()} counts them.
+     */
+    public long getFramesSent() {
+        return framesSent.sum();
+    }
+
+    public boolean isBatched() {
+        return batched;
+    }
+
+    public void setBatched(boolean batched) {
+        this.batched = batched;
+    }
+
+    /**
+     * Source address written into frames from the next message on, 0..127; by default
+     * the port number.
+     */
+    public void setSourceAddress(int sourceAddress) {
+        if (sourceAddress < 0 || sourceAddress > FrameFormat.SOURCE_MASK) {
+            throw new IllegalArgumentException("Source address must be 0.." + FrameFormat.SOURCE_MASK + ": " + sourceAddress);
+        }
+        this.sourceAddress = sourceAddress;
+    }
+
+    public String getPortName() {
+        return transport.getName();
+    }
+
+    /**
+     * Queues the message behind any others on this session and returns at once.
+     *
+     * @return completes with the number of frames that could not be sent
+     */
+    public CompletableFuture<Integer> sendAsync(byte[] message, Listener listener) {
+        return sendAsync(ByteBuffer.wrap(message), FrameFormat.BROADCAST, listener);
+    }
+
+    /**
+     * Queues the message for the endpoint with the given address.
+     *
+     * @return completes with the number of frames that could not be sent
+     */
+    public CompletableFuture<Integer> sendAsync(byte[] message, int destination, Listener listener) {
+        return sendAsync(ByteBuffer.wrap(message), destination, listener);
+    }
+
+    /**
+     * Queues the remaining bytes of the buffer, which may be a file mapping; they are read
+     * frame by frame as they go out, and the buffer itself is left as it is.
+     *
+     * @return completes with the number of frames that could not be sent
+     */
+    public CompletableFuture<Integer> sendAsync(ByteBuffer message, Listener listener) {
+        return sendAsync(message, FrameFormat.BROADCAST, listener);
+    }
+
+    /**
+     * Queues the remaining bytes of the buffer for the endpoint with the given address.
+     *
+     * @return completes with the number of frames that could not be sent
+     */
+    public CompletableFuture<Integer> sendAsync(ByteBuffer message, int destination, Listener listener) {
+        return enqueue(new Transmission(message.duplicate(), FrameFormat.checkAddress(destination), listener, false));
+    }
+
+    /**
+     * Queues data that is already compressed, for {@link ArqSender}, which has to compress
+     * before cutting frames of its own: the frames are marked but nothing is deflated again.
+     */
+    CompletableFuture<Integer> sendCompressedAsync(ByteBuffer data, Listener listener) {
+        return enqueue(new Transmission(data.duplicate(), FrameFormat.BROADCAST, listener, true));
+    }
+
+    private CompletableFuture<Integer> enqueue(Transmission transmission) {
+        synchronized (this) {
+            queue.add(transmission);
+            if (current == null) {
+                startNext();
+            }
+        }
+        return transmission.result;
+    }
+
+    /**
+     * Sends the message frame by frame, blocking until every frame is either on the line
+     * or has used up its attempts.
+     *
+     * @return number of frames that could not be sent
+     */
+    public int send(byte[] message, Listener listener) throws IOException {
+        try {
+            return sendAsync(message, listener).get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while sending");
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException) {
+                throw (IOException) cause;
+            }
+            throw new IOException(cause);
+        }
+    }
+
+    private synchronized void startNext() {
+        current = queue.poll();
+        if (current != null) {
+            current.begin();
+        }
+    }
+
+    /**
+     * One message in flight. Each step runs on a scheduler thread and either carries on
+     * with the next frame or schedules itself again after a sense interval or backoff.
+     */
+    private final class Transmission implements Runnable {
+        private final ByteBuffer message;
+        private final int address;
+        private final boolean compressed; // Already, by the caller
+        private final Listener listener;
+        private final CompletableFuture<Integer> result = new CompletableFuture<>();
+        private ByteBuffer data; // What frames are cut from
+        private OutputStream out;
+        private int dataLength;
+        private int destination;
+        private int source;
+        private int packet; // Index of the frame in hand, -1 before the first
+        private int payloadLength;
+        private int frameLength;
+        private long encodedAt;
+        private int attempt;
+        private int failed;
+
+        Transmission(ByteBuffer message, int address, Listener listener, boolean compressed) {
+            this.message = message;
+            this.address = address;
+            this.listener = listener;
+            this.compressed = compressed;
+        }
+
+        void begin() {
+            FrameFormat format = nextFormat;
+            if (format != null) {
+                nextFormat = null;
+                useFormat(format);
+            }
+            data = message;
+            dataLength = encoder.getDataLength();
+            destination = compressed ? address | FrameFormat.COMPRESSED_FLAG : address;
+            source = sourceAddress >= 0 ? sourceAddress : LinkPorts.portNumber(getPortName());
+            out = transport.getOutputStream();
+            packet = -1;
+            batch.clear();
+            batchedFrames = 0;
+            scheduler.execute(this);
+        }
+
+        @Override
+        public void run() {
+            try {
+                if (packet < 0 && !nextFrame()) {
+                    return;
+                }
+                while (true) {
+                    if (isChannelBusy()) {
+                        scheduler.schedule(this, senseNanos, TimeUnit.NANOSECONDS); // Sense again later rather than spin
+                        return;
+                    }
+                    transmit(out, frameLength);
+                    if (!isCollision()) {
+                        delivered(payloadLength, encodedAt);
+                    } else {
+                        metrics.collision();
+                        listener.onCollision(packet + 1);
+                        flush(out); // The line is idle during the backoff anyway
+                        if (++attempt < MAX_ATTEMPTS) {
+                            long delay = backoffDelay(attempt);
+                            metrics.backoff(delay);
+                            scheduler.schedule(this, delay, TimeUnit.NANOSECONDS);
+                            return;
+                        }
+                        failed++;
+                        metrics.frameFailed();
+                        listener.onFailed(packet + 1);
+                    }
+                    if (!nextFrame()) {
+                        return;
+                    }
+                }
+            } catch (IOException | RuntimeException e) {
+                finish(e);
+            }
+        }
+
+        // Encodes the next frame, or finishes the message when there is none
+        private boolean nextFrame() throws IOException {
+            if (!data.hasRemaining()) {
+                flush(out);
+                finish(null);
+                return false;
+            }
+            packet++;
+            payloadLength = Math.min(dataLength, data.remaining());
+            byte[] array;
+            int offset;
+            if (data.hasArray()) {
+                array = data.array();
+                offset = data.arrayOffset() + data.position();
+            } else {
+                data.get(chunk, 0, payloadLength);
+                data.position(data.position() - payloadLength); // Only a look, the frame may take less
+                array = chunk;
+                offset = 0;
+            }
+            // Any message may be binary: cut the frame short where the framing would garble it, as ArqSender does
+            while (payloadLength > 1 && encoder.isAmbiguous(array, offset, payloadLength, destination, source)) {
+                payloadLength--;
+            }
+            encodedAt = System.nanoTime();
+            frameLength = encoder.encodeInto(frame, 0, array, offset, payloadLength, destination, source);
+            data.position(data.position() + payloadLength);
+            attempt = 0;
+            listener.onPacket(packet + 1, frame, 0, frameLength);
+            return true;
+        }
+
+        private void finish(Throwable error) {
+            startNext(); // Before completing, so a caller that sends again on completion queues behind it
+            if (error != null) {
+                result.completeExceptionally(error);
+            } else {
+                result.complete(failed);
+            }
+        }
+    }
+
+    private void useFormat(FrameFormat format) {
+        encoder = new FrameEncoder(format);
+        frame = new byte[encoder.getFrameLength()];
+        // On the heap, not direct: transports take a byte[] through their OutputStream, and a direct buffer would
+        // have to be copied into one for every write
+        batch = ByteBuffer.allocate(Math.max(BATCH_CAPACITY, frame.length));
+        int smallestFrame = format.getHeaderLength() + 2; // Flag, header and FCS
+        batchedSince = new long[batch.capacity() / smallestFrame + 1];
+        batchedPayload = new int[batchedSince.length];
+    }
+
+    private void transmit(OutputStream out, int frameLength) throws IOException {
+        metrics.frameTransmitted(frameLength);
+        if (!batched) {
+            out.write(frame, 0, frameLength);
+            out.flush();
+            return;
+        }
+        if (batch.remaining() < frameLength) {
+            flush(out);
+        }
+        batch.put(frame, 0, frameLength);
+    }
+
+    // A frame that got through is counted once it has actually been written
+    private void delivered(int payloadLength, long encodedAt) {
+        if (!batched) {
+            frameSent(payloadLength, System.nanoTime() - encodedAt);
+            return;
+        }
+        batchedSince[batchedFrames] = encodedAt;
+        batchedPayload[batchedFrames] = payloadLength;
+        batchedFrames++;
+    }
+
+    private void flush(OutputStream out) throws IOException {
+        if (batch.position() > 0) {
+            out.write(batch.array(), 0, batch.position());
+            out.flush();
+            batch.clear();
+        }
+        long now = System.nanoTime();
+        for (int i = 0; i < batchedFrames; i++) {
+            frameSent(batchedPayload[i], now - batchedSince[i]);
+        }
+        batchedFrames = 0;
+    }
+
+    private void frameSent(int payloadLength, long latencyNanos) {
+        framesSent.increment();
+        metrics.frameSent(payloadLength, latencyNanos);
+    }
+
+    private boolean isChannelBusy() {
+        return channel.isBusy();
+    }
+
+    private boolean isCollision() {
+        return channel.isCollision();
+    }
+
+    // Truncated binary exponential backoff: after the n-th collision wait 0..2^min(n-1, 10) slots
+    private long backoffDelay(int collisions) {
+        int k = Math.min(collisions - 1, BACKOFF_LIMIT);
+        return channel.backoffSlots(k) * slotNanos;
+    }
+
+    private static final class SharedScheduler {
+        static final ScheduledExecutorService INSTANCE = Executors.newScheduledThreadPool(
+                Math.max(2, Runtime.getRuntime().availableProcessors()), new ThreadFactory() {
+                    private final AtomicInteger count = new AtomicInteger();
+
+                    @Override
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "csma-" + count.incrementAndGet());
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+    }
+}
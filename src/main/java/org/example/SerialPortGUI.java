@@ -6,47 +6,48 @@ import java.awt.*;
 import java.awt.event.ActionListener;
 import java.awt.event.KeyAdapter;
 import java.awt.event.KeyEvent;
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.OverlappingFileLockException;
 import java.nio.charset.StandardCharsets;
-import java.util.concurrent.atomic.AtomicInteger;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardOpenOption;
 import java.util.logging.Level;
 import java.util.logging.Logger;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
 import java.util.List;
-import java.util.Arrays;
 
 public class SerialPortGUI extends JFrame {
     private static final Logger logger = Logger.getLogger(SerialPortGUI.class.getName());
-    private static int instanceCount; // Static counter for instances
-    private static final byte[] FLAG = {64, 104}; // '@' and 'h' characters
-    private static final int DATA_LENGTH = 8;
-    private static final byte ESCAPE = 0x00; // '00' character
-    private static final byte ESCAPE_MASK = 0x1B; // 'ESC' character
+    private static final int HISTORY_LINES = 20; // Journal records shown per search
+    private static final String WINDOW_LOCK_FILE = "windows.lock";
+    private static final int WINDOW_SLOTS = 16;
+    private static FileChannel windowLock; // Left open: closing it would let go of the slot
     private boolean isSending = false; // Flag to track sending state
 
-
-    static {
-        String instanceCountStr = Config.getProperty("INSTANCE_COUNT");
-        if (instanceCountStr != null) {
-            try {
-                instanceCount = Integer.parseInt(instanceCountStr);
-            } catch (NumberFormatException e) {
-                instanceCount = 0; // Default value if parsing fails
-            }
-        } else {
-            instanceCount = 0; // Default value if property is not set
-        }
-    }
-
     private final JTextArea textArea;
-    private final JTextArea sentTextArea;
-    private final JTextArea receivedTextArea;
+    private final LogModel sentTextArea;
+    private final LogModel receivedTextArea;
     private final JComboBox<String> sendPortComboBox;
     private final JComboBox<String> receivePortComboBox;
-    private final JTextArea statusLabel;
+    private final LogModel statusLabel;
     private int sendCount = 0;
 
-    private SerialPort comPort1;
-    private SerialPort comPort2;
+    private Transport comPort1;
+    private Transport comPort2;
+    private SenderSession senderSession;
+    private ReceiverSession receiverSession;
+    private ArqSender arqSender; // Instead of the sessions when ARQ_WINDOW is set
+    private ArqReceiver arqReceiver;
+    private ReceiveJournal journal; // Of the receiving port, when JOURNAL_DIR is set
+    private LineSettings lineSettings = LinkSettings.lineSettings(); // For ports opened from here on; a probe may change it
+    private LineSettings configuredLine = lineSettings; // As last read from config.properties
+    private TextAssembler receivedText; // Characters split between frames, for the receive window
+    private volatile FileReceiver fileReceiver; // Takes the received data instead of the window while set
+    private final PortDiscovery portDiscovery = new PortDiscovery();
 
     public SerialPortGUI() {
         setTitle("Serial Port Communication");
@@ -54,31 +55,25 @@ public class SerialPortGUI extends JFrame {
         setMinimumSize(new Dimension(630, 300));
         setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
-        // Set location based on instance count
-        setLocation(instanceCount * getWidth(), 100);
-        instanceCount++;
-        Config.setProperty("INSTANCE_COUNT", String.valueOf(instanceCount));
-
-        // Add shutdown hook to decrement instanceCount
-        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
-            instanceCount = 0;
-            Config.setProperty("INSTANCE_COUNT", String.valueOf(instanceCount));
-        }));
+        // Side by side with the other windows started from this directory
+        setLocation(claimWindowSlot() * getWidth(), 100);
 
         textArea = new JTextArea(2, 20);
         textArea.setLineWrap(true);
         textArea.setWrapStyleWord(true);
         JScrollPane textAreaScrollPane = new JScrollPane(textArea);
-        sentTextArea = new JTextArea();
-        sentTextArea.setEditable(false);
-        receivedTextArea = new JTextArea();
-        receivedTextArea.setEditable(false);
-        receivedTextArea.setLineWrap(true); // Включить перенос строк
-        receivedTextArea.setWrapStyleWord(true); // Перенос по границам слов
+        int logLines = LinkSettings.logMaxLines();
+        int logRepaintMs = LinkSettings.logRepaintIntervalMs();
+        sentTextArea = new LogModel(logLines, 60, logRepaintMs);
+        receivedTextArea = new LogModel(logLines, 60, logRepaintMs); // Перенос строк по ширине окна
 
         sendPortComboBox = new JComboBox<>();
         sendPortComboBox.setBorder(BorderFactory.createEmptyBorder(0,0,0,30));
         receivePortComboBox = new JComboBox<>();
+        // Port scans run in the background; the combo boxes are filled from the cache
+        portDiscovery.addListener(ports -> SwingUtilities.invokeLater(this::onPortsChanged));
+        portDiscovery.start(LinkSettings.portScanIntervalMs());
+        Config.addListener(() -> SwingUtilities.invokeLater(this::applySettings));
         updatePortList();
 
         sendPortComboBox.addActionListener(e -> openSendPort());
@@ -94,24 +89,33 @@ public class SerialPortGUI extends JFrame {
         portPanel.add(sendPortComboBox);
         portPanel.add(new JLabel("Select receiving COM Port:"));
         portPanel.add(receivePortComboBox);
+        JButton sendFileButton = new JButton("Send file...");
+        sendFileButton.addActionListener(e -> sendFile());
+        portPanel.add(sendFileButton);
+        JButton receiveFileButton = new JButton("Receive file...");
+        receiveFileButton.addActionListener(e -> receiveFile());
+        portPanel.add(receiveFileButton);
+        JButton probeButton = new JButton("Probe line");
+        probeButton.addActionListener(e -> probeLine());
+        portPanel.add(probeButton);
+        JButton historyButton = new JButton("History...");
+        historyButton.addActionListener(e -> searchJournal());
+        portPanel.add(historyButton);
         inputPanel.add(portPanel, BorderLayout.SOUTH);
 
         JPanel sentPanel = new JPanel(new BorderLayout());
         sentPanel.add(new JLabel("Debug window:"), BorderLayout.NORTH);
-        sentPanel.add(new JScrollPane(sentTextArea), BorderLayout.CENTER);
+        sentPanel.add(new LogView(sentTextArea), BorderLayout.CENTER);
 
         JPanel receivedPanel = new JPanel(new BorderLayout());
         receivedPanel.add(new JLabel("Output window:"), BorderLayout.NORTH);
-        receivedPanel.add(new JScrollPane(receivedTextArea), BorderLayout.CENTER);
+        receivedPanel.add(new LogView(receivedTextArea), BorderLayout.CENTER);
 
         JSplitPane splitPane = new JSplitPane(JSplitPane.HORIZONTAL_SPLIT, sentPanel, receivedPanel);
         splitPane.setResizeWeight(0.5);
 
-        statusLabel = new JTextArea(" ");
-        statusLabel.setEditable(false);
-        statusLabel.setLineWrap(true);
-        statusLabel.setWrapStyleWord(true);
-        JScrollPane statusScrollPane = new JScrollPane(statusLabel);
+        statusLabel = new LogModel(logLines, 120, logRepaintMs);
+        LogView statusScrollPane = new LogView(statusLabel);
 
         JPanel statusPanel = new JPanel(new BorderLayout());
         statusPanel.setBorder(BorderFactory.createTitledBorder("Status Window"));
@@ -140,6 +144,7 @@ public class SerialPortGUI extends JFrame {
         sendPortComboBox.addPopupMenuListener(new javax.swing.event.PopupMenuListener() {
             @Override
             public void popupMenuWillBecomeVisible(javax.swing.event.PopupMenuEvent e) {
+                portDiscovery.refresh();
                 updatePortList();
             }
 
@@ -157,6 +162,7 @@ public class SerialPortGUI extends JFrame {
         receivePortComboBox.addPopupMenuListener(new javax.swing.event.PopupMenuListener() {
             @Override
             public void popupMenuWillBecomeVisible(javax.swing.event.PopupMenuEvent e) {
+                portDiscovery.refresh();
                 updatePortList();
             }
 
@@ -170,145 +176,61 @@ public class SerialPortGUI extends JFrame {
                 // Do nothing
             }
         });
-
-        Timer portReadTimer = new Timer(100, e -> readFromReceivePort());
-        portReadTimer.start();
     }
 
-    private static final int POLYNOMIAL = 0x91; // x^7 + x^4 + 1
-
-    private byte calculateFCS(byte[] data) {
-    int fcs = 0;
-    for (byte b : data) {
-        fcs ^= b; // XOR текущего байта данных с FCS
-        for (int i = 0; i < 8; i++) {
-            if ((fcs & 0x80) != 0) { // Если старший бит установлен
-                fcs = (fcs << 1) ^ POLYNOMIAL; // Сдвиг влево и XOR с полиномом
+    private void drainReceivedFrames() {
+        if (receiverSession == null) {
+            return;
+        }
+        List<Frame> frames = new ArrayList<>();
+        receiverSession.drainTo(frames);
+        StringBuilder received = new StringBuilder();
+        for (Frame frame : frames) {
+            FileReceiver file = fileReceiver;
+            if (file != null) {
+                file.onFrame(frame.getDestination(), frame.getSource(), frame.getData(), 0, frame.getData().length, frame.getFcs());
             } else {
-                fcs <<= 1; // Просто сдвиг влево
+                receivedText.append(frame.getData(), 0, frame.getData().length, received);
             }
         }
-    }
-    return (byte) (fcs & 0x3F); // Маскирование FCS до 6 бит
-}
-
-    private boolean verifyFCS(byte[] data, byte fcs) {
-    return calculateFCS(data) != fcs;
-}
-
-    private byte[] leftCycleShift(byte[] byteMessage) {
-        byte[] shiftByteMessage = new byte[byteMessage.length];
-        int highestBitOfFirstByte = (byteMessage[0] & 0x80) >> 7;
-
-        for (int i = 0; i < byteMessage.length; i++) {
-            shiftByteMessage[i] = (byte) ((byteMessage[i] << 1) & 0xFF);
-            if (i < byteMessage.length - 1) {
-                shiftByteMessage[i] |= (byte) ((byteMessage[i + 1] & 0x80) >> 7);
-            }
+        if (received.length() > 0) {
+            receivedTextArea.append(received.toString());
         }
-
-        shiftByteMessage[shiftByteMessage.length - 1] |= (byte) highestBitOfFirstByte;
-        return shiftByteMessage;
     }
 
-    private byte[] rightCycleShift(byte[] byteMessage) {
-        byte[] shiftByteMessage = new byte[byteMessage.length];
-        int lowestBitOfLastByte = byteMessage[byteMessage.length - 1] & 1;
-
-        for (int i = byteMessage.length - 1; i >= 0; i--) {
-            shiftByteMessage[i] = (byte) ((byteMessage[i] >> 1) & 0xFF);
-            if (i > 0) {
-                shiftByteMessage[i] |= (byte) ((byteMessage[i - 1] & 1) << 7);
+    // config.properties was edited while running
+    private void applySettings() {
+        FrameFormat format = LinkSettings.frameFormat();
+        if (senderSession != null) {
+            if (arqSender == null) {
+                senderSession.setFormat(format); // ARQ ends keep theirs until the ports are reopened
+            } else {
+                arqSender.setCompression(LinkSettings.compression());
             }
+            senderSession.setBatched(LinkSettings.batchedSend());
         }
-
-        shiftByteMessage[0] |= (byte) (lowestBitOfLastByte << 7);
-        return shiftByteMessage;
-    }
-
-    private String cyclicShiftCorrection(String message, byte crc) {
-        int weight = Integer.bitCount(crc);
-        byte[] shiftMessage = message.getBytes(StandardCharsets.UTF_8);
-
-        if (weight <= 1) {
-            shiftMessage[shiftMessage.length - 1] ^= crc;
-            return new String(shiftMessage, StandardCharsets.UTF_8);
+        if (receiverSession != null) {
+            receiverSession.setFormat(format);
         }
-
-        int countShifts = 0;
-        int sizeBits = shiftMessage.length * 8;
-
-        for (int i = 0; i < sizeBits; i++) {
-            countShifts++;
-            shiftMessage = leftCycleShift(shiftMessage);
-            crc = calculateFCS(shiftMessage);
-
-            if (Integer.bitCount(crc) <= 1) {
-                shiftMessage[shiftMessage.length - 1] ^= crc;
-
-                for (int j = 0; j < countShifts; j++) {
-                    shiftMessage = rightCycleShift(shiftMessage);
+        LineSettings line = LinkSettings.lineSettings();
+        if (!line.equals(configuredLine)) { // Otherwise a probed setting stands
+            configuredLine = line;
+            lineSettings = line;
+            for (Transport port : new Transport[] {comPort1, comPort2}) {
+                if (port != null && !port.setLineSettings(line)) {
+                    statusLabel.append("\nCould not fully switch " + port.getName() + " to " + line + ".");
                 }
-
-                return new String(shiftMessage, StandardCharsets.UTF_8);
             }
         }
-
-        return message;
+        statusLabel.append("\nSettings reloaded: " + format + ", " + lineSettings + (LinkSettings.batchedSend() ? ", batched" : "")
+                + (LinkSettings.compression() ? arqSender != null ? ", deflate" : ", no deflate without ARQ" : "") + ".");
     }
 
-    private void readFromReceivePort() {
-    if (comPort2 != null && comPort2.isOpen()) {
-        new SwingWorker<Void, String>() {
-            @Override
-            protected Void doInBackground() throws Exception {
-                while (comPort2.bytesAvailable() > 0) {
-                    byte[] readBuffer = new byte[1024];
-                    int numRead = comPort2.getInputStream().read(readBuffer);
-                    if (numRead > 0) {
-                        int offset = 0;
-                        int fixedPacketLength = 13; // Fixed packet length
-                        while (offset < numRead) {
-                            if (readBuffer[offset] != FLAG[0] && readBuffer[offset + 1] != FLAG[1]) {
-                                offset++; // Incomplete packet, look for the start of the packet
-                                continue;
-                            }
-                            byte[] packet = Arrays.copyOfRange(readBuffer, offset, offset + fixedPacketLength);
-                            byte[] unpackedData = byte_destaffing(packet);
-                            byte[] data = Arrays.copyOfRange(unpackedData, 2, 2 + DATA_LENGTH);
-                            byte fcs = calculateFCS(data);
-                            if (verifyFCS(data, fcs)) {
-                                if (Math.random() < 0.4) {
-                                    int randomByteIndex = (int) (Math.random() * data.length);
-                                    int randomBitIndex = (int) (Math.random() * 8);
-                                    data[randomByteIndex] ^= (byte) (1 << randomBitIndex);
-                                }
-                                String correctedData = cyclicShiftCorrection(new String(data), fcs);
-                                data = correctedData.getBytes();
-                            }
-                            String dataWithOffset = new String(data);
-                            publish(dataWithOffset);
-                            offset += fixedPacketLength;
-                        }
-                    }
-                }
-                return null;
-            }
-
-            @Override
-            protected void process(List<String> chunks) {
-                for (String chunk : chunks) {
-                    receivedTextArea.append(chunk);
-                }
-            }
-
-            @Override
-            protected void done() {
-                // Handle completion if necessary
-            }
-        }.execute();
+    private void onPortsChanged() {
+        if (!sendPortComboBox.isPopupVisible() && !receivePortComboBox.isPopupVisible()) {
+            updatePortList(); // Otherwise picked up when the popup closes
+        }
     }
-}
 
     private void updatePortList() {
         String selectedSendPort = (String) sendPortComboBox.getSelectedItem();
@@ -329,22 +251,21 @@ public class SerialPortGUI extends JFrame {
         sendPortComboBox.addItem("None");
         receivePortComboBox.addItem("None");
 
-        SerialPort[] ports = SerialPort.getCommPorts();
-        for (SerialPort port : ports) {
-            String portName = port.getSystemPortName();
-            if (portName.matches("COM\\d+") && !portName.equals("COM5") && !portName.equals("COM6")) {
+        List<String> extraPorts = new ArrayList<>();
+        for (PortDiscovery.PortInfo port : portDiscovery.getPorts()) {
+            String portName = port.getName();
+            if (portName.startsWith(LoopbackTransport.PREFIX) || portName.startsWith(PtyTransport.PREFIX)) {
+                extraPorts.add(portName);
+            } else if (portName.matches("COM\\d+") && !portName.equals("COM5") && !portName.equals("COM6")) {
                 int portNumber = Integer.parseInt(portName.replaceAll("\\D", ""));
-                SerialPort tempPort = SerialPort.getCommPort(portName);
-                boolean isOpen = tempPort.openPort();
-                tempPort.closePort();
-                if (isOpen) {
-                    if ((selectedReceivePort == null || selectedReceivePort.equals("None")
+                if (port.isAvailable()) { // Probed before we opened anything, so our own ports are re-added below
+                    if (!portName.equals(selectedSendPort) && (selectedReceivePort == null || selectedReceivePort.equals("None")
                             || portNumber != Integer.parseInt(selectedReceivePort.replaceAll("\\D", "")) - 1)
                         && (selectedReceivePort == null || selectedReceivePort.equals("None")
                             || portNumber != Integer.parseInt(selectedReceivePort.replaceAll("\\D", "")) - 2)) {
                         sendPortComboBox.addItem(portName);
                     }
-                    if (!portName.equals("COM1") && (selectedSendPort == null || selectedSendPort.equals("None")
+                    if (!portName.equals("COM1") && !portName.equals(selectedReceivePort) && (selectedSendPort == null || selectedSendPort.equals("None")
                             || portNumber != Integer.parseInt(selectedSendPort.replaceAll("\\D", "")) + 2)
                             && (selectedSendPort == null || selectedSendPort.equals("None")
                             || portNumber != Integer.parseInt(selectedSendPort.replaceAll("\\D", "")) + 1)) {
@@ -354,6 +275,16 @@ public class SerialPortGUI extends JFrame {
             }
         }
 
+        // Loopback and pty transports that jSerialComm does not list
+        for (String portName : extraPorts) {
+            if (!portName.equals(selectedSendPort)) {
+                sendPortComboBox.addItem(portName);
+            }
+            if (!portName.equals(selectedReceivePort)) {
+                receivePortComboBox.addItem(portName);
+            }
+        }
+
         // Add selected ports back to the list
         if (selectedSendPort != null && !selectedSendPort.equals("None")) {
             sendPortComboBox.addItem(selectedSendPort);
@@ -387,42 +318,194 @@ public class SerialPortGUI extends JFrame {
 
     private void openSendPort() {
         String selectedSendPort = (String) sendPortComboBox.getSelectedItem();
-        if (comPort1 != null && comPort1.isOpen()) {
-            comPort1.closePort();
-            sentTextArea.append("Sending port closed.\n");
-        }
+        closeSendPort();
 
         if (selectedSendPort != null && !selectedSendPort.equals("None")) {
-            comPort1 = SerialPort.getCommPort(selectedSendPort);
-            configurePort(comPort1, SerialPort.TIMEOUT_WRITE_BLOCKING);
-            if (comPort1.openPort()) {
+            comPort1 = LinkPorts.open(selectedSendPort, SerialPort.TIMEOUT_WRITE_BLOCKING, lineSettings);
+            if (comPort1 != null) {
+                if (LinkSettings.arqWindow() > 0) {
+                    arqSender = new ArqSender(comPort1, LinkSettings.frameFormat(), LinkSettings.arqWindow(),
+                            LinkSettings.arqTimeoutMs(), LinkSettings.arqMaxRetries());
+                    senderSession = arqSender.getSession();
+                    arqSender.setCompression(LinkSettings.compression());
+                } else {
+                    senderSession = new SenderSession(comPort1, LinkSettings.frameFormat());
+                }
+                senderSession.setBatched(LinkSettings.batchedSend());
                 sentTextArea.append("Sending port opened.\n");
-                statusLabel.setText("Opened " + selectedSendPort + " with baud rate 9600, data bits 8, stop bits 1, no parity.");
+                statusLabel.setText("Opened " + selectedSendPort + " with " + comPort1.getLineSettings() + "."
+                        + (arqSender == null && LinkSettings.compression() ? " COMPRESSION=deflate only applies over ARQ." : ""));
             } else {
                 sentTextArea.append("Failed to open sending port.\n");
             }
         }
     }
 
+    private void closeSendPort() {
+        senderSession = null;
+        if (arqSender != null) {
+            arqSender.close();
+            arqSender = null;
+        }
+        if (comPort1 != null && comPort1.isOpen()) {
+            comPort1.close();
+            sentTextArea.append("Sending port closed.\n");
+        }
+    }
+
     private void openReceivePort() {
         String selectedReceivePort = (String) receivePortComboBox.getSelectedItem();
-        if (comPort2 != null && comPort2.isOpen()) {
-            comPort2.closePort();
-            sentTextArea.append("Receiving port closed.\n");
-        }
+        closeReceivePort();
 
         if (selectedReceivePort != null && !selectedReceivePort.equals("None")) {
-            comPort2 = SerialPort.getCommPort(selectedReceivePort);
-            configurePort(comPort2, SerialPort.TIMEOUT_READ_SEMI_BLOCKING);
-            if (comPort2.openPort()) {
+            comPort2 = LinkPorts.open(selectedReceivePort, SerialPort.TIMEOUT_READ_SEMI_BLOCKING, lineSettings);
+            if (comPort2 != null) {
+                receivedText = new TextAssembler();
+                journal = ReceiveJournal.openConfigured(selectedReceivePort);
+                if (LinkSettings.arqWindow() > 0) {
+                    // Frames come in order and checked, and the data is copied before leaving the reader thread
+                    arqReceiver = new ArqReceiver(comPort2, LinkSettings.frameFormat(), LinkSettings.arqWindow(),
+                            (destination, source, buffer, offset, length, fcs) -> {
+                                FileReceiver file = fileReceiver;
+                                if (file != null) {
+                                    file.onFrame(destination, source, buffer, offset, length, fcs);
+                                    return;
+                                }
+                                String text = receivedText.decode(buffer, offset, length);
+                                SwingUtilities.invokeLater(() -> receivedTextArea.append(text));
+                            });
+                    arqReceiver.setJournal(journal);
+                    arqReceiver.start();
+                } else {
+                    receiverSession = new ReceiverSession(comPort2, LinkSettings.frameFormat(), 1024,
+                            () -> SwingUtilities.invokeLater(this::drainReceivedFrames));
+                    receiverSession.setJournal(journal);
+                    receiverSession.start();
+                }
                 sentTextArea.append("Receiving port opened.\n");
-                statusLabel.setText("Opened " + selectedReceivePort + " with baud rate 9600, data bits 8, stop bits 1, no parity.");
+                statusLabel.setText("Opened " + selectedReceivePort + " with " + comPort2.getLineSettings() + ".");
             } else {
                 sentTextArea.append("Failed to open receiving port.\n");
             }
         }
     }
 
+    private void closeReceivePort() {
+        if (receiverSession != null) {
+            receiverSession.stop();
+            receiverSession = null;
+        }
+        if (arqReceiver != null) {
+            arqReceiver.stop();
+            arqReceiver = null;
+        }
+        if (journal != null) {
+            try {
+                journal.close();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Error closing journal", e);
+            }
+            journal = null;
+        }
+        if (comPort2 != null && comPort2.isOpen()) {
+            comPort2.close();
+            sentTextArea.append("Receiving port closed.\n");
+        }
+    }
+
+    // Both ports give up their sessions while the probe has them, and reopen with what it found
+    private void probeLine() {
+        String sendPort = (String) sendPortComboBox.getSelectedItem();
+        String receivePort = (String) receivePortComboBox.getSelectedItem();
+        if (sendPort == null || sendPort.equals("None") || receivePort == null || receivePort.equals("None")) {
+            JOptionPane.showMessageDialog(this, "Please select both COM ports.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        if (isSending) {
+            JOptionPane.showMessageDialog(this, "Messages are being sent. Please wait.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        closeSendPort();
+        closeReceivePort();
+        LineSettings base = lineSettings;
+        statusLabel.setText("Probing the line between " + sendPort + " and " + receivePort + "...");
+        Thread probe = new Thread(() -> {
+            LineSettings found = null;
+            Transport first = LinkPorts.open(sendPort, SerialPort.TIMEOUT_WRITE_BLOCKING, base);
+            Transport second = LinkPorts.open(receivePort, SerialPort.TIMEOUT_READ_SEMI_BLOCKING, base);
+            try {
+                if (first != null && second != null) {
+                    found = LineProbe.probe(first, second, base, (settings, clean) -> SwingUtilities.invokeLater(() ->
+                            statusLabel.append("\n" + (clean ? "Clean: " : "Failed: ") + settings)));
+                }
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Line probe failed", e);
+            } finally {
+                if (first != null) {
+                    first.close();
+                }
+                if (second != null) {
+                    second.close();
+                }
+            }
+            LineSettings result = found;
+            SwingUtilities.invokeLater(() -> {
+                if (result != null) {
+                    lineSettings = result;
+                }
+                openSendPort();
+                openReceivePort();
+                statusLabel.append(result != null ? "\nProbed: " + result + ", timeouts " + result.getReadTimeoutMs() + " ms."
+                        : "\nNo setting got the test pattern through; keeping " + base + ".");
+            });
+        }, "line-probe");
+        probe.setDaemon(true);
+        probe.start();
+    }
+
+    // Shows the latest records of the receiving port's journal, or those holding some text
+    private void searchJournal() {
+        ReceiveJournal searched = journal;
+        if (searched == null) {
+            JOptionPane.showMessageDialog(this, "Set JOURNAL_DIR in config.properties and open a receiving port.",
+                    "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        String text = JOptionPane.showInputDialog(this, "Text to look for (empty for the latest records):");
+        if (text == null) {
+            return;
+        }
+        Thread search = new Thread(() -> {
+            Deque<JournalRecord> found = new ArrayDeque<>(); // The last HISTORY_LINES that match
+            String result;
+            try {
+                searched.flush();
+                JournalReader.Query query = text.isEmpty()
+                        ? JournalReader.Query.ALL.withSequences(Math.max(0, searched.getNextSequence() - HISTORY_LINES), Long.MAX_VALUE)
+                        : JournalReader.Query.ALL.withText(text);
+                new JournalReader(searched.getDirectory()).forEach(query, record -> {
+                    if (found.size() == HISTORY_LINES) {
+                        found.removeFirst();
+                    }
+                    found.addLast(record);
+                    return true;
+                });
+                StringBuilder lines = new StringBuilder(found.isEmpty() ? "\nNothing found in the journal." : "");
+                for (JournalRecord record : found) {
+                    lines.append('\n').append(record);
+                }
+                result = lines.toString();
+            } catch (IOException e) {
+                logger.log(Level.WARNING, "Journal search failed", e);
+                result = "\nJournal search failed: " + e.getMessage();
+            }
+            String shown = result;
+            SwingUtilities.invokeLater(() -> statusLabel.append(shown));
+        }, "journal-search");
+        search.setDaemon(true);
+        search.start();
+    }
+
     private void sendData() {
     if (isSending) {
         JOptionPane.showMessageDialog(this, "Messages are already being sent. Please wait.", "Error", JOptionPane.ERROR_MESSAGE);
@@ -435,7 +518,7 @@ public class SerialPortGUI extends JFrame {
         return;
     }
 
-    if (comPort1 == null || !comPort1.isOpen()) {
+    if (senderSession == null || !comPort1.isOpen()) {
         JOptionPane.showMessageDialog(this, "Please ensure the sending COM port is open.", "Error", JOptionPane.ERROR_MESSAGE);
         return;
     }
@@ -450,192 +533,138 @@ public class SerialPortGUI extends JFrame {
     textArea.setEditable(false);
     isSending = true; // Set the flag to true
 
-    new SwingWorker<Void, String>() {
+    statusLabel.setText(""); // Clear old messages at the beginning of a new batch
+    statusLabel.append("Receiving from " + senderSession.getPortName() + " to " + (comPort2 != null ? comPort2.getName() : "None") + " with " + comPort1.getLineSettings() + ". Send count: " + sendCount);
+    // Frames go out on the sender's scheduler; nothing waits for them
+    if (arqSender != null) {
+        statusLabel.append("\nWaiting for acknowledgements, window " + arqSender.getWindow() + ".");
+        arqSender.send(dataToSend.getBytes(StandardCharsets.UTF_8)).whenComplete((failed, error) -> SwingUtilities.invokeLater(() -> sendFinished(error)));
+        return;
+    }
+    senderSession.sendAsync(dataToSend.getBytes(StandardCharsets.UTF_8), new SenderSession.Listener() {
         @Override
-        protected Void doInBackground() {
-            statusLabel.setText(""); // Clear old messages at the beginning of a new batch
-            publish("Receiving from " + comPort1.getSystemPortName() + " to " + (comPort2 != null ? comPort2.getSystemPortName() : "None") + " with baud rate 9600, data bits 8, stop bits 1, no parity. Send count: " + sendCount);
-            try {
-                byte[] dataBytes = dataToSend.getBytes();
-                int totalPackets = (int) Math.ceil((double) dataBytes.length / DATA_LENGTH);
-                AtomicInteger countPackets = new AtomicInteger();
-
-                for (int i = 0; i < totalPackets; i++) {
-                    int start = i * DATA_LENGTH;
-                    int end = Math.min(start + DATA_LENGTH, dataBytes.length);
-                    byte[] packetData = Arrays.copyOfRange(dataBytes, start, end);
-                    byte[] packet = createPacket(packetData, comPort1.getSystemPortName());
-
-                    int attempt = 0;
-                    boolean sent = false;
-                    int packetNumber = countPackets.incrementAndGet();
-                    publish("\nPacket " + packetNumber + " : " + packetToString(packet) + " ");
-
-                    while (!sent && attempt < 16) {
-                        while (!isChannelBusy()) {
-                            comPort1.getOutputStream().write(packet);
-                            comPort1.getOutputStream().flush();
-                            sent = true;
-
-                            if (isCollision()) {
-                                sent = false;
-                                publish("#");
-                                applyRandomDelay(attempt);
-                                attempt++;
-                                if (attempt >= 16) {
-                                break;
-                                }
-                            } else {
-                                break;
-                            }
-                        }
-                    }
-
-                    if (!sent) {
-                        publish("\nFailed to send packet " + packetNumber + " after 16 attempts.");
-                    }
-                }
-
-                sendCount++;
-            } catch (Exception e) {
-                logger.log(Level.SEVERE, "Error during communication", e);
-                publish("Error: " + e.getMessage() + "\n");
-            }
-            return null;
+        public void onPacket(int packetNumber, byte[] buffer, int offset, int length) {
+            statusLabel.append("\nPacket " + packetNumber + " : " + FrameEncoder.describe(buffer, offset, length) + " ");
         }
 
         @Override
-        protected void process(List<String> chunks) {
-            for (String chunk : chunks) {
-                statusLabel.append(chunk);
-            }
+        public void onCollision(int packetNumber) {
+            statusLabel.append("#");
         }
 
         @Override
-        protected void done() {
-            textArea.setEditable(true); // Re-enable the input text area
-            textArea.requestFocusInWindow(); // Request focus back to the input text area
-            textArea.getCaret().setVisible(true); // Ensure the caret is visible
-            isSending = false; // Reset the flag
+        public void onFailed(int packetNumber) {
+            statusLabel.append("\nFailed to send packet " + packetNumber + " after " + SenderSession.MAX_ATTEMPTS + " attempts.");
         }
-    }.execute();
+    }).whenComplete((failed, error) -> SwingUtilities.invokeLater(() -> sendFinished(error)));
 }
 
-    private byte[] createPacket(byte[] data, String sourcePort) {
-    byte[] packet = new byte[4 + DATA_LENGTH + 1]; // 2 flags + 1 destination address + 1 source address + data length + 1 FCS
-    packet[0] = FLAG[0];
-    packet[1] = FLAG[1];
-    packet[2] = 0; // Destination Address
-    packet[3] = (byte) Integer.parseInt(sourcePort.replaceAll("\\D", ""));
-    System.arraycopy(data, 0, packet, 4, data.length);
-    Arrays.fill(packet, 4 + data.length, 4 + DATA_LENGTH, (byte) 0); // Pad with zeros if necessary
-    packet[4 + DATA_LENGTH] = calculateFCS(data); // FCS
-    return applyByteStuffing(packet);
-}
-
-    private byte[] applyByteStuffing(byte[] packet) {
-    // Извлечение части данных
-    byte[] data = Arrays.copyOfRange(packet, 2, packet.length-1);
-
-    // Применение байт-стаффинга к части данных
-    byte[] stuffedData = applyByteStuffingToData(data);
-
-    // Восстановление пакета с данными
-    byte[] stuffedPacket = new byte[2 + stuffedData.length + 1];
-    System.arraycopy(packet, 0, stuffedPacket, 0, 2);
-    System.arraycopy(stuffedData, 0, stuffedPacket, 2, stuffedData.length);
-    System.arraycopy(packet, packet.length - 1, stuffedPacket, 2 + stuffedData.length, 1);
-
-    return stuffedPacket;
-}
+    private void sendFile() {
+        if (isSending) {
+            JOptionPane.showMessageDialog(this, "Messages are already being sent. Please wait.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        if (senderSession == null || !comPort1.isOpen()) {
+            JOptionPane.showMessageDialog(this, "Please ensure the sending COM port is open.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showOpenDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        Path file = chooser.getSelectedFile().toPath();
+        SenderSession session = senderSession;
+        ArqSender arq = arqSender;
+        FileSender sender = new FileSender(file, arq != null ? arq::send : data -> session.sendAsync(data, Arq.QUIET),
+                FileTransfer.throttled(1000, (bytes, total, elapsedNanos) -> SwingUtilities.invokeLater(() ->
+                        statusLabel.append("\nSent " + FileTransfer.describe(bytes, total, elapsedNanos)))));
+        textArea.setEditable(false);
+        isSending = true;
+        statusLabel.setText("Sending " + file + " from " + session.getPortName() + " with " + comPort1.getLineSettings()
+                + (arq != null ? ", window " + arq.getWindow() : "") + ".");
+        try {
+            sender.start().whenComplete((failed, error) -> SwingUtilities.invokeLater(() -> {
+                if (error == null && failed > 0) {
+                    statusLabel.append("\n" + failed + " packets failed.");
+                }
+                sendFinished(error);
+            }));
+        } catch (IOException e) {
+            sendFinished(e);
+        }
+    }
 
-    private byte[] applyByteStuffingToData(byte[] data) {
-    ByteArrayOutputStream stuffedData = new ByteArrayOutputStream();
-    for (int i = 0; i < data.length; i++) {
-        if (data[i] == '@' && i + 1 < data.length && data[i + 1] == 'h') {
-            stuffedData.write('@' ^ ESCAPE);
-            stuffedData.write(ESCAPE_MASK);
-            i++; // Пропустить следующий символ, так как он является частью последовательности
-        } else {
-            stuffedData.write(data[i]);
+    private void receiveFile() {
+        if (comPort2 == null || !comPort2.isOpen()) {
+            JOptionPane.showMessageDialog(this, "Please ensure the receiving COM port is open.", "Error", JOptionPane.ERROR_MESSAGE);
+            return;
+        }
+        JFileChooser chooser = new JFileChooser();
+        if (chooser.showSaveDialog(this) != JFileChooser.APPROVE_OPTION) {
+            return;
+        }
+        FileReceiver previous = fileReceiver;
+        if (previous != null) {
+            previous.close();
         }
+        FileReceiver receiver = new FileReceiver(chooser.getSelectedFile().toPath(),
+                FileTransfer.throttled(1000, (bytes, total, elapsedNanos) -> SwingUtilities.invokeLater(() ->
+                        statusLabel.append("\nReceived " + FileTransfer.describe(bytes, total, elapsedNanos)))));
+        statusLabel.append("\nWaiting for a file on " + comPort2.getName() + ".");
+        receiver.getResult().whenComplete((file, error) -> SwingUtilities.invokeLater(() -> {
+            if (fileReceiver == receiver) {
+                fileReceiver = null; // Back to text
+            }
+            statusLabel.append(error != null ? "\nFile not received: " + error.getMessage() : "\nReceived " + file + ".");
+        }));
+        fileReceiver = receiver;
     }
-    return stuffedData.toByteArray();
-}
 
-    private byte[] byte_destaffing(byte[] packet) {
-    byte[] data = Arrays.copyOfRange(packet, 2, packet.length - 1);
-    ByteArrayOutputStream unstuffedData = new ByteArrayOutputStream();
-    for (int i = 0; i < data.length; i++) {
-        if (i < data.length - 1 && data[i] == ('@' ^ ESCAPE) && data[i + 1] == (ESCAPE_MASK) && data[i + 1] != ('h')) {
-            unstuffedData.write('@');
-            unstuffedData.write('h');
-            i++; // Skip the next character as it is part of the sequence
+    private void sendFinished(Throwable error) {
+        if (error != null) {
+            logger.log(Level.SEVERE, "Error during communication", error);
+            statusLabel.append("Error: " + error.getMessage() + "\n");
         } else {
-            unstuffedData.write(data[i]);
+            sendCount++;
+            double ratio = LinkMetrics.global().getCompressionRatio();
+            if (ratio > 0) {
+                statusLabel.append(String.format("\nDeflated to %.0f%% so far.", ratio * 100));
+            }
         }
+        textArea.setEditable(true); // Re-enable the input text area
+        textArea.requestFocusInWindow(); // Request focus back to the input text area
+        textArea.getCaret().setVisible(true); // Ensure the caret is visible
+        isSending = false; // Reset the flag
     }
-    return unstuffedData.toByteArray();
-}
 
-    private String packetToString(byte[] packet) {
-    StringBuilder sb = new StringBuilder();
-    for (int i = 0; i < packet.length; i++) {
-        if (i < 2) {
-            sb.append((char) packet[i]); // Convert first 2 bytes to characters
-        } else if (i < 4) {
-            sb.append(packet[i] & 0xFF); // Convert 3rd and 4th bytes to decimal
-        } else {
-            if (i < packet.length - 1 && packet[i] == ('@' ^ ESCAPE) && packet[i + 1] == (ESCAPE_MASK)) {
-                sb.append("[0x").append(String.format("%02X", ESCAPE)).append(" 0x").append(String.format("%02X", ESCAPE_MASK)).append("]");
-                i++; // Skip the next character as it is part of the sequence
-            } else {
-                if (i == packet.length - 1) {
-                    if (Character.isISOControl(packet[i]) || !Character.isDefined(packet[i])  || packet[i] == ' ' || packet[i] == '\n') {
-                        sb.append(" \u0080"); // Placeholder for non-printable characters
-                    } else {
-                        sb.append(" ").append((char) packet[i]); // Convert FCS byte to character and separate with a space
-                    }
-                } else {
-                    if ((packet[i] & 0xFF) == 0) {
-                        sb.append((packet[i] & 0xFF)); // Convert remaining bytes to decimal if value is 00
-                    } else {
-                        sb.append(new String(new byte[]{packet[i]})); // Convert remaining bytes to characters
+    // The first position no other window holds. Each window keeps a byte of the lock file locked for as long as its
+    // process runs, and the OS lets go of it however the process ends, so there is no shared count to get wrong.
+    private static synchronized int claimWindowSlot() {
+        try {
+            if (windowLock == null) {
+                windowLock = FileChannel.open(Paths.get(WINDOW_LOCK_FILE), StandardOpenOption.CREATE, StandardOpenOption.WRITE);
+            }
+            for (int slot = 0; slot < WINDOW_SLOTS; slot++) {
+                try {
+                    if (windowLock.tryLock(slot, 1, false) != null) {
+                        return slot;
                     }
+                } catch (OverlappingFileLockException e) {
+                    // Taken by another window of this process
                 }
             }
+        } catch (IOException e) {
+            logger.log(Level.WARNING, "Could not open " + WINDOW_LOCK_FILE, e);
         }
+        return 0;
     }
-    return sb.toString().trim(); // Remove the trailing space
-}
-
-    private void configurePort(SerialPort port, int timeout) {
-        port.setBaudRate(9600);
-        port.setNumDataBits(8);
-        port.setNumStopBits(SerialPort.ONE_STOP_BIT);
-        port.setParity(SerialPort.NO_PARITY);
-        port.setComPortTimeouts(timeout, 1000, 1000);
-    }
-
-    private boolean isChannelBusy() {
-    return Math.random() < 0.4; // 40% вероятность занятости канала
-    }
-
-    private boolean isCollision() {
-        return Math.random() < 0.6; // 60% вероятность коллизии
-    }
-
-    private void applyRandomDelay(int attempt) {
-    int k = Math.min(attempt, 4); // Must be 10
-    int delay = (int) (Math.random() * (Math.pow(2, k) + 1));
-    try {
-        Thread.sleep(delay * 200L); // Задержка в миллисекундах
-    } catch (InterruptedException e) {
-        Thread.currentThread().interrupt();
-    }
-}
 
     public static void main(String[] args) {
+        LinkMetrics.registerMBean();
+        int statsIntervalMs = LinkSettings.statsIntervalMs();
+        if (statsIntervalMs > 0) {
+            LinkMetrics.startReporter(statsIntervalMs, System.err::println);
+        }
         SwingUtilities.invokeLater(() -> new SerialPortGUI().setVisible(true));
     }
 }
\ No newline at end of file
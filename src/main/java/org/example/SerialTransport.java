@@ -0,0 +1,94 @@
+package org.example;
+
+import com.fazecast.jSerialComm.SerialPort;
+import com.fazecast.jSerialComm.SerialPortDataListener;
+import com.fazecast.jSerialComm.SerialPortEvent;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Transport over a jSerialComm port. Data events arrive on the port's own event thread.
+ */
+public final class SerialTransport implements Transport {
+    private final SerialPort port;
+    private final int timeoutMode;
+    private volatile LineSettings lineSettings;
+
+    /**
+     * @param lineSettings what the port has been set up with
+     */
+    public SerialTransport(SerialPort port, int timeoutMode, LineSettings lineSettings) {
+        this.port = port;
+        this.timeoutMode = timeoutMode;
+        this.lineSettings = lineSettings;
+    }
+
+    public SerialPort getPort() {
+        return port;
+    }
+
+    @Override
+    public String getName() {
+        return port.getSystemPortName();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return port.isOpen();
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return port.getInputStream();
+    }
+
+    @Override
+    public OutputStream getOutputStream() {
+        return port.getOutputStream();
+    }
+
+    @Override
+    public int bytesAvailable() {
+        return port.bytesAvailable();
+    }
+
+    @Override
+    public LineSettings getLineSettings() {
+        return lineSettings;
+    }
+
+    @Override
+    public boolean setLineSettings(LineSettings settings) {
+        lineSettings = settings;
+        return settings.applyTo(port, timeoutMode);
+    }
+
+    @Override
+    public void setDataListener(Runnable onDataAvailable) {
+        port.addDataListener(new SerialPortDataListener() {
+            @Override
+            public int getListeningEvents() {
+                return SerialPort.LISTENING_EVENT_DATA_AVAILABLE;
+            }
+
+            @Override
+            public void serialEvent(SerialPortEvent event) {
+                if (event.getEventType() == SerialPort.LISTENING_EVENT_DATA_AVAILABLE) {
+                    onDataAvailable.run();
+                }
+            }
+        });
+    }
+
+    @Override
+    public void removeDataListener() {
+        port.removeDataListener();
+    }
+
+    @Override
+    public void close() {
+        port.removeDataListener();
+        port.closePort();
+    }
+}
@@ -0,0 +1,62 @@
+package org.example;
+
+import java.util.SplittableRandom;
+
+/**
+ * Channel with fixed probabilities and its own seeded generator, so a run with the same
+ * seed and settings makes the same decisions. A frame hit by an error gets a burst of
+ * consecutive bits flipped starting at a random bit.
+ */
+public final class SimulatedChannel implements ChannelModel {
+    private final SplittableRandom random;
+    private final double busyRate;
+    private final double collisionRate;
+    private final double frameErrorRate;
+    private final int burstLength;
+
+    /**
+     * @param frameErrorRate chance that a received frame is damaged
+     * @param burstLength    bits flipped in a row when it is
+     */
+    public SimulatedChannel(long seed, double busyRate, double collisionRate, double frameErrorRate, int burstLength) {
+        this.random = new SplittableRandom(seed);
+        this.busyRate = busyRate;
+        this.collisionRate = collisionRate;
+        this.frameErrorRate = frameErrorRate;
+        this.burstLength = Math.max(1, burstLength);
+    }
+
+    @Override
+    public boolean isBusy() {
+        return random.nextDouble() < busyRate;
+    }
+
+    @Override
+    public boolean isCollision() {
+        return random.nextDouble() < collisionRate;
+    }
+
+    @Override
+    public int backoffSlots(int exponent) {
+        return random.nextInt((1 << exponent) + 1);
+    }
+
+    @Override
+    public int corrupt(byte[] buffer, int offset, int length) {
+        if (length == 0 || random.nextDouble() >= frameErrorRate) {
+            return 0;
+        }
+        int bits = length * 8;
+        int first = random.nextInt(bits);
+        int end = Math.min(bits, first + burstLength);
+        for (int i = first; i < end; i++) {
+            buffer[offset + i / 8] ^= (byte) (0x80 >>> (i % 8));
+        }
+        return end - first;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("busy %.2f, collision %.2f, frame errors %.2f x %d bits", busyRate, collisionRate, frameErrorRate, burstLength);
+    }
+}
@@ -0,0 +1,87 @@
+package org.example;
+
+import java.nio.ByteBuffer;
+import java.nio.CharBuffer;
+import java.nio.charset.Charset;
+import java.nio.charset.CharsetDecoder;
+import java.nio.charset.CoderResult;
+import java.nio.charset.CodingErrorAction;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Turns the data of consecutive frames back into text. A character split between two
+ * frames is held back until the rest of it arrives, so multi-byte text comes through
+ * whole whatever the frame size. Bytes that are not valid text become U+FFFD.
+ *
+ * One per receiving session, fed in frame order; not thread safe.
+ */
+public final class TextAssembler {
+    private static final int BUFFER_SIZE = 256; // Any chunk size works, a frame's worth saves looping
+
+    private final CharsetDecoder decoder;
+    private final ByteBuffer pending = ByteBuffer.allocate(BUFFER_SIZE); // Read mode between calls: the unfinished character
+    private final CharBuffer chars;
+
+    public TextAssembler() {
+        this(StandardCharsets.UTF_8);
+    }
+
+    public TextAssembler(Charset charset) {
+        this.decoder = charset.newDecoder()
+                .onMalformedInput(CodingErrorAction.REPLACE)
+                .onUnmappableCharacter(CodingErrorAction.REPLACE);
+        this.chars = CharBuffer.allocate((int) Math.ceil(BUFFER_SIZE * decoder.maxCharsPerByte()));
+        pending.flip();
+    }
+
+    /**
+     * Appends the text the bytes complete to {@code target}; an unfinished character at
+     * the end is kept for the next call.
+     */
+    public void append(byte[] buffer, int offset, int length, StringBuilder target) {
+        while (length > 0) {
+            pending.compact();
+            int chunk = Math.min(length, pending.remaining());
+            pending.put(buffer, offset, chunk);
+            pending.flip();
+            offset += chunk;
+            length -= chunk;
+            decode(false, target);
+        }
+    }
+
+    /**
+     * The text the bytes complete, as for {@link #append(byte[], int, int, StringBuilder)}.
+     */
+    public String decode(byte[] buffer, int offset, int length) {
+        StringBuilder text = new StringBuilder(length);
+        append(buffer, offset, length, text);
+        return text.toString();
+    }
+
+    /**
+     * Ends the text, for instance when the port is closed: an unfinished character is
+     * appended as U+FFFD and the next call starts afresh.
+     */
+    public void finish(StringBuilder target) {
+        decode(true, target);
+        decoder.flush(chars);
+        drain(target);
+        decoder.reset();
+        pending.clear().flip();
+    }
+
+    private void decode(boolean endOfInput, StringBuilder target) {
+        CoderResult result;
+        do {
+            result = decoder.decode(pending, chars, endOfInput);
+            drain(target);
+        } while (result.isOverflow());
+    }
+
+    private void drain(StringBuilder target) {
+        chars.flip();
+        target.append(chars);
+        chars.clear();
+    }
+}
@@ -0,0 +1,42 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * Byte link the sessions run over: a serial port, an in-process loopback or a pty.
+ * Each open transport has one reader thread that calls the data listener whenever
+ * {@link #bytesAvailable()} turns positive; the input stream is only read from there.
+ */
+public interface Transport extends Closeable {
+    String getName();
+
+    boolean isOpen();
+
+    InputStream getInputStream();
+
+    OutputStream getOutputStream();
+
+    int bytesAvailable();
+
+    void setDataListener(Runnable onDataAvailable);
+
+    void removeDataListener();
+
+    /**
+     * Line parameters in effect; transports without a serial line keep what they were
+     * given, for display.
+     */
+    LineSettings getLineSettings();
+
+    /**
+     * Changes the line parameters of the open transport from the next byte on.
+     *
+     * @return false if the line refused some of them
+     */
+    boolean setLineSettings(LineSettings settings);
+
+    @Override
+    void close();
+}
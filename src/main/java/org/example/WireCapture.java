@@ -0,0 +1,93 @@
+package org.example;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Append-only, memory-mapped record of the raw bytes crossing a port.
+ *
+ * <pre>
+ * header: magic "OKCW", int version, long start time in epoch milliseconds
+ * record: long nanoseconds since start, byte direction, int length, length bytes
+ * </pre>
+ *
+ * A direction of 0 marks the end; the file is mapped in regions and cut to size on close.
+ */
+public final class WireCapture implements Closeable {
+    public static final int MAGIC = 0x4F4B4357; // "OKCW"
+    public static final int VERSION = 1;
+    public static final byte END = 0;
+    public static final byte RECEIVED = 1;
+    public static final byte SENT = 2;
+    static final int HEADER_LENGTH = 16;
+    static final int RECORD_HEADER_LENGTH = 13;
+    private static final int REGION = 16 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final long startNanos = System.nanoTime();
+    private MappedByteBuffer region;
+    private long regionStart;
+    private boolean closed;
+
+    private WireCapture(FileChannel channel) throws IOException {
+        this.channel = channel;
+        map(0, HEADER_LENGTH);
+        region.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis());
+    }
+
+    /**
+     * Creates the file, replacing any previous capture of the same name.
+     */
+    public static WireCapture create(Path file) throws IOException {
+        return new WireCapture(FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE));
+    }
+
+    /**
+     * Appends one record; callable from the reader and writer threads of a port at once.
+     */
+    public synchronized void record(byte direction, byte[] buffer, int offset, int length) {
+        if (closed || length <= 0) {
+            return;
+        }
+        int size = RECORD_HEADER_LENGTH + length;
+        try {
+            if (region.remaining() < size + 1) { // Room for the end marker too
+                map(regionStart + region.position(), size + 1);
+            }
+        } catch (IOException e) {
+            closed = true; // Disk full or similar; the capture so far stays readable
+            return;
+        }
+        region.putLong(System.nanoTime() - startNanos).put(direction).putInt(length).put(buffer, offset, length);
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        if (!closed) {
+            closed = true;
+            long end = regionStart + region.position();
+            region.force();
+            try {
+                channel.truncate(end);
+            } catch (IOException e) {
+                // Some platforms refuse to shrink a mapped file; the zero tail reads as the end marker
+            }
+        }
+        channel.close();
+    }
+
+    private void map(long position, int minimum) throws IOException {
+        if (region != null) {
+            region.force();
+        }
+        region = channel.map(FileChannel.MapMode.READ_WRITE, position, Math.max(REGION, minimum));
+        region.order(ByteOrder.BIG_ENDIAN);
+        regionStart = position;
+    }
+}
@@ -0,0 +1,155 @@
+package org.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.IntPredicate;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * An {@link ArqSender} on one end of a loopback and an {@link ArqReceiver} on the other,
+ * with channels that never back off, and lose the data frames a test picks.
+ */
+class ArqTest {
+    private static int nextEndpoint = 2000; // Loopback pairs live as long as the process, so each test takes its own
+
+    private LoopbackTransport out;
+    private LoopbackTransport in;
+    private ArqSender sender;
+    private ArqReceiver receiver;
+    private final ByteArrayOutputStream received = new ByteArrayOutputStream();
+
+    @AfterEach
+    void close() {
+        if (sender != null) {
+            sender.close();
+            receiver.stop();
+            out.close();
+            in.close();
+            sender = null;
+        }
+    }
+
+    @Test
+    void compressedMessageSeveralWindowsLongArrivesWhole() throws Exception {
+        open(8, 5_000, new Lossy(frame -> false));
+        sender.setCompression(true);
+        byte[] message = message(20_000);
+        assertEquals(0, sender.send(message).get(20, TimeUnit.SECONDS));
+        assertArrayEquals(message, received());
+    }
+
+    @Test
+    void lostFramesAreSentAgainAndHandedOverInOrder() throws Exception {
+        // Every seventh frame lost: later frames arrive before the one sent again, and the seqs wrap several times
+        open(8, 200, new Lossy(frame -> frame % 7 == 6));
+        long retransmissions = LinkMetrics.global().getArqRetransmissions();
+        byte[] message = message(10_000);
+        assertEquals(0, sender.send(message).get(20, TimeUnit.SECONDS));
+        assertArrayEquals(message, received());
+        assertTrue(LinkMetrics.global().getArqRetransmissions() > retransmissions);
+    }
+
+    @Test
+    void fullWindowWrapsPastTheSequenceSpace() throws Exception {
+        open(Arq.MAX_WINDOW, 5_000, new Lossy(frame -> false));
+        byte[] first = message(3_000);
+        byte[] second = message(4_000);
+        CompletableFuture<Integer> sent = sender.send(first);
+        assertEquals(0, sender.send(second).get(20, TimeUnit.SECONDS));
+        assertEquals(0, sent.get());
+        byte[] both = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, both, first.length, second.length);
+        assertArrayEquals(both, received());
+    }
+
+    @Test
+    void gapIsNakedAndFilledLongBeforeTheTimeout() throws Exception {
+        open(8, 60_000, new Lossy(frame -> frame == 2));
+        long retransmissions = LinkMetrics.global().getArqRetransmissions();
+        byte[] message = message(600);
+        assertEquals(0, sender.send(message).get(10, TimeUnit.SECONDS));
+        assertArrayEquals(message, received());
+        assertEquals(1, LinkMetrics.global().getArqRetransmissions() - retransmissions);
+    }
+
+    private void open(int window, long timeoutMs, Lossy channel) {
+        int endpoint = nextEndpoint;
+        nextEndpoint += 2;
+        out = LoopbackTransport.open(LoopbackTransport.PREFIX + endpoint, 0);
+        in = LoopbackTransport.open(LoopbackTransport.PREFIX + (endpoint + 1), 0);
+        FrameFormat format = FrameFormat.variable(32);
+        receiver = new ArqReceiver(in, format, window, (destination, source, buffer, offset, length, fcs) -> {
+            synchronized (received) {
+                received.write(buffer, offset, length);
+            }
+        });
+        receiver.setChannels(channel, new Lossy(frame -> false));
+        receiver.start();
+        sender = new ArqSender(out, format, window, timeoutMs, 5);
+        sender.getSession().setChannel(new Lossy(frame -> false));
+        sender.getSession().setTiming(0, 0, TimeUnit.MILLISECONDS);
+    }
+
+    // The receiver hands data over before it ACKs it, so by the time a send completes all of it is here
+    private byte[] received() {
+        synchronized (received) {
+            return received.toByteArray();
+        }
+    }
+
+    // Half text that deflates well, half random bytes that do not
+    private static byte[] message(int length) {
+        byte[] data = new byte[length];
+        SplittableRandom random = new SplittableRandom(length);
+        for (int i = 0; i < length; i++) {
+            data[i] = i < length / 2 ? (byte) ("the quick brown fox ".charAt(i % 20)) : (byte) random.nextInt(256);
+        }
+        return data;
+    }
+
+    // Never busy and never collides; damages the frames received whose index the test picks, beyond what the
+    // FCS can correct, so the receiver drops them
+    private static final class Lossy implements ChannelModel {
+        private final IntPredicate lose;
+        private int frames;
+
+        Lossy(IntPredicate lose) {
+            this.lose = lose;
+        }
+
+        @Override
+        public boolean isBusy() {
+            return false;
+        }
+
+        @Override
+        public boolean isCollision() {
+            return false;
+        }
+
+        @Override
+        public int backoffSlots(int exponent) {
+            return 0;
+        }
+
+        @Override
+        public int corrupt(byte[] buffer, int offset, int length) {
+            if (!lose.test(frames++)) {
+                return 0;
+            }
+            for (int i = 0; i < length; i++) {
+                buffer[offset + i] ^= (byte) 0xA5;
+            }
+            return 4 * length;
+        }
+    }
+}
@@ -0,0 +1,87 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.lang.management.ManagementFactory;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+/**
+ * The steady-state encode and decode paths allocate nothing per frame. Measured with the
+ * allocation counter of the current thread, after a warm-up so class loading and the
+ * JIT do not count.
+ */
+class CodecAllocationTest {
+    private static final int FRAMES = 100_000;
+    private static final long SLACK_BYTES = 1024; // What reading the counter may cost, over all the frames
+
+    private final com.sun.management.ThreadMXBean threads =
+            (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+    private long receivedBytes;
+    private final FrameDecoder.Handler sink = (destination, source, buffer, offset, length, fcs) -> receivedBytes += length;
+
+    @Test
+    void encodeIntoAllocatesNothing() {
+        for (FrameFormat format : formats()) {
+            FrameEncoder encoder = new FrameEncoder(format);
+            byte[] data = data(encoder.getDataLength());
+            byte[] frame = new byte[encoder.getFrameLength()];
+            Runnable encode = () -> {
+                for (int i = 0; i < FRAMES; i++) {
+                    encoder.encodeInto(frame, 0, data, 0, data.length - (i & 3), 0, 3);
+                }
+            };
+            assertAllocatesNothing(format + ": encodeInto", encode);
+        }
+    }
+
+    @Test
+    void decodeFrameAllocatesNothing() {
+        for (FrameFormat format : formats()) {
+            FrameEncoder encoder = new FrameEncoder(format);
+            byte[] data = data(encoder.getDataLength());
+            byte[] packet = encoder.encode(data, 0, data.length, 0, 3);
+            FrameDecoder decoder = new FrameDecoder(format);
+            Runnable decode = () -> {
+                for (int i = 0; i < FRAMES; i++) {
+                    decoder.feed(packet, 0, packet.length, sink);
+                }
+            };
+            receivedBytes = 0;
+            assertAllocatesNothing(format + ": decodeFrame", decode);
+            int payload = packet.length - 2 - format.getHeaderLength() - 1;
+            assertEquals(2L * FRAMES * payload, receivedBytes, format.toString()); // Every frame decoded, twice
+        }
+    }
+
+    private void assertAllocatesNothing(String what, Runnable run) {
+        assumeTrue(threads.isThreadAllocatedMemorySupported() && threads.isThreadAllocatedMemoryEnabled());
+        run.run(); // Warm up
+        long thread = Thread.currentThread().getId();
+        long before = threads.getThreadAllocatedBytes(thread);
+        run.run();
+        long allocated = threads.getThreadAllocatedBytes(thread) - before;
+        assertTrue(allocated <= SLACK_BYTES, what + " allocated " + allocated + " bytes over " + FRAMES + " frames");
+    }
+
+    private static FrameFormat[] formats() {
+        return new FrameFormat[] {
+                FrameFormat.fixed(FrameEncoder.DEFAULT_DATA_LENGTH),
+                FrameFormat.variable(FrameFormat.MAX_PAYLOAD),
+                FrameFormat.fixed(FrameEncoder.DEFAULT_DATA_LENGTH).withFec(true),
+        };
+    }
+
+    // Text with a FLAG in it, so stuffing has work to do
+    private static byte[] data(int length) {
+        byte[] text = "Lorem @h ipsum dolor sit amet ".getBytes(StandardCharsets.US_ASCII);
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = text[i % text.length];
+        }
+        return data;
+    }
+}
@@ -0,0 +1,78 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteBuffer;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * What a {@link Compressor} deflates, cut into frames and inflated by a
+ * {@link Decompressor}, as {@link ArqSender} and {@link ArqReceiver} do.
+ */
+class CompressionTest {
+    private static final int FRAME_LENGTH = 29;
+
+    @Test
+    void messagesComeBackAcrossStreamResets() {
+        Compressor compressor = new Compressor();
+        ByteArrayOutputStream deflated = new ByteArrayOutputStream();
+        ByteArrayOutputStream sent = new ByteArrayOutputStream();
+        int parts = 0;
+        // Messages of odd lengths, so a stream ends part way through one of them
+        for (int length : new int[] {100, 20_000, 30_000, 7, 50_000}) {
+            byte[] message = message(length);
+            sent.write(message, 0, length);
+            ByteBuffer buffer = ByteBuffer.wrap(message);
+            while (buffer.hasRemaining()) {
+                ByteBuffer part = compressor.compressPart(buffer);
+                deflated.write(part.array(), part.arrayOffset(), part.remaining());
+                parts++;
+            }
+        }
+        assertTrue(parts > 5, "no stream was reset");
+        assertArrayEquals(sent.toByteArray(), inflate(deflated.toByteArray()));
+    }
+
+    @Test
+    void uncompressedFramesPassThrough() {
+        byte[] data = message(FRAME_LENGTH);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        new Decompressor((destination, source, buffer, offset, length, fcs) -> {
+            assertEquals(5, destination);
+            out.write(buffer, offset, length);
+        }).onFrame(5, 3, data, 0, data.length, (byte) 0);
+        assertArrayEquals(data, out.toByteArray());
+    }
+
+    // Cut into frames that pay no heed to where one part or stream ends and the next begins
+    private static byte[] inflate(byte[] deflated) {
+        LinkMetrics metrics = LinkMetrics.global();
+        long failures = metrics.getInflateFailures();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        Decompressor decompressor = new Decompressor((destination, source, buffer, offset, length, fcs) -> {
+            assertEquals(5, destination);
+            out.write(buffer, offset, length);
+        });
+        for (int offset = 0; offset < deflated.length; offset += FRAME_LENGTH) {
+            int length = Math.min(FRAME_LENGTH, deflated.length - offset);
+            decompressor.onFrame(5 | FrameFormat.COMPRESSED_FLAG, 3, deflated, offset, length, (byte) 0);
+        }
+        assertEquals(failures, metrics.getInflateFailures());
+        return out.toByteArray();
+    }
+
+    // Text with random words in it, so it deflates some but not to nothing
+    private static byte[] message(int length) {
+        byte[] data = new byte[length];
+        SplittableRandom random = new SplittableRandom(length);
+        for (int i = 0; i < length; i++) {
+            data[i] = random.nextInt(8) == 0 ? (byte) random.nextInt(256) : (byte) "frame check ".charAt(i % 12);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,72 @@
+package org.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+/**
+ * config.properties in the working directory, put back as it was after each test.
+ */
+class ConfigTest {
+    private static final String KEY = "CONFIG_TEST_COUNTER";
+
+    private final Path file = Paths.get("config.properties");
+    private byte[] original;
+
+    @BeforeEach
+    void save() throws Exception {
+        original = Files.exists(file) ? Files.readAllBytes(file) : null;
+    }
+
+    @AfterEach
+    void restore() throws Exception {
+        Config.flush();
+        if (original != null) {
+            Files.write(file, original);
+        } else {
+            Files.deleteIfExists(file);
+        }
+    }
+
+    @Test
+    void reloadDuringFlushKeepsTheChangesBeingWritten() throws Exception {
+        AtomicInteger set = new AtomicInteger();
+        AtomicBoolean done = new AtomicBoolean();
+        AtomicReference<String> reverted = new AtomicReference<>();
+        Thread reloader = new Thread(() -> {
+            while (!done.get()) {
+                int before = set.get();
+                Config.reload();
+                int seen = Integer.parseInt(Config.getProperty(KEY));
+                if (seen < before) {
+                    reverted.compareAndSet(null, before + " went back to " + seen);
+                }
+            }
+        }, "config-test-reloader");
+        Config.setProperty(KEY, "0");
+        Config.flush();
+        reloader.start();
+        try {
+            for (int i = 1; i <= 300; i++) {
+                Config.setProperty(KEY, Integer.toString(i));
+                set.set(i);
+                Config.flush();
+            }
+        } finally {
+            done.set(true);
+            reloader.join();
+        }
+        assertNull(reverted.get());
+        assertEquals("300", Config.getProperty(KEY));
+    }
+}
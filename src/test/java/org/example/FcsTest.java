@@ -0,0 +1,197 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Checks {@link Fcs} against the bit-by-bit routines it replaced, copied below from
+ * SerialPortGUI as they were, and its correction against single-bit errors in every bit.
+ *
+ * The baseline correction is given the syndrome, the FCS computed over the data XOR the
+ * one received, as its check. Where the two still agree is compared below: intact
+ * frames, and frames of up to 2 bytes, where every single-bit error it restores the new
+ * code restores as well. Dropped on purpose when correction went by unique syndrome:
+ * the baseline took a check of weight 1 for an error in the last data byte, so it
+ * flipped a data bit when the error was in the FCS, and beyond 2 bytes its rotation
+ * often found a wrong bit, which {@link Fcs#correct} reports as uncorrectable instead.
+ */
+class FcsTest {
+    private static final int POLYNOMIAL = 0x91;
+
+    @Test
+    void calculateMatchesBaseline() {
+        SplittableRandom random = new SplittableRandom(1);
+        for (int i = 0; i < 100_000; i++) {
+            byte[] data = randomBytes(random, random.nextInt(FrameFormat.MAX_PAYLOAD + 1));
+            assertEquals(calculateFCS(data), Fcs.calculate(data), () -> Arrays.toString(data));
+        }
+    }
+
+    @Test
+    void calculateOverSlice() {
+        SplittableRandom random = new SplittableRandom(2);
+        byte[] data = randomBytes(random, 64);
+        assertEquals(calculateFCS(Arrays.copyOfRange(data, 5, 37)), Fcs.calculate(data, 5, 32));
+    }
+
+    @Test
+    void correctFlipsBackSingleBitErrorsItCanLocate() {
+        SplittableRandom random = new SplittableRandom(3);
+        for (int length = 1; length <= FrameFormat.MAX_PAYLOAD; length++) {
+            byte[] data = randomBytes(random, length);
+            byte fcs = Fcs.calculate(data);
+            int corrected = 0;
+            for (int bit = 0; bit < length * 8; bit++) {
+                byte[] damaged = data.clone();
+                damaged[bit / 8] ^= (byte) (0x80 >>> (bit % 8));
+                if (Fcs.calculate(damaged) == fcs) {
+                    continue; // Beyond 15 bytes some single-bit errors go unseen by the FCS at all
+                }
+                byte[] actual = damaged.clone();
+                if (Fcs.correct(actual, 0, length, fcs)) {
+                    assertArrayEquals(data, actual, "length " + length + ", bit " + bit);
+                    corrected++;
+                } else {
+                    assertArrayEquals(damaged, actual, "length " + length + ", bit " + bit);
+                }
+            }
+            if (length <= 2) {
+                assertEquals(length * 8, corrected, "length " + length);
+            } else if (length > Fcs.MAX_CORRECTABLE_LENGTH) {
+                assertEquals(0, corrected, "length " + length);
+            }
+        }
+    }
+
+    @Test
+    void correctLeavesDataAloneForErrorInFcs() {
+        SplittableRandom random = new SplittableRandom(4);
+        for (int length = 1; length <= 2; length++) {
+            byte[] data = randomBytes(random, length);
+            for (int bit = 0; bit < 6; bit++) {
+                byte[] actual = data.clone();
+                assertTrue(Fcs.correct(actual, 0, length, (byte) (Fcs.calculate(data) ^ (1 << bit))));
+                assertArrayEquals(data, actual);
+            }
+        }
+    }
+
+    @Test
+    void correctMatchesBaselineOnIntactFrames() {
+        SplittableRandom random = new SplittableRandom(6);
+        for (int i = 0; i < 10_000; i++) {
+            byte[] data = randomBytes(random, 1 + random.nextInt(FrameFormat.MAX_PAYLOAD));
+            byte[] actual = data.clone();
+            assertTrue(Fcs.correct(actual, 0, actual.length, Fcs.calculate(data)));
+            assertArrayEquals(cyclicShiftCorrection(data.clone(), (byte) 0), actual, () -> Arrays.toString(data));
+        }
+    }
+
+    @Test
+    void correctRestoresWhateverBaselineRestoresUpToTwoBytes() {
+        SplittableRandom random = new SplittableRandom(7);
+        for (int i = 0; i < 2_000; i++) {
+            byte[] data = randomBytes(random, 1 + i % 2);
+            byte fcs = Fcs.calculate(data);
+            for (int bit = 0; bit < data.length * 8; bit++) {
+                byte[] damaged = data.clone();
+                damaged[bit / 8] ^= (byte) (0x80 >>> (bit % 8));
+                byte[] baseline = cyclicShiftCorrection(damaged.clone(), (byte) (calculateFCS(damaged) ^ fcs));
+                byte[] actual = damaged.clone();
+                Fcs.correct(actual, 0, actual.length, fcs);
+                if (Arrays.equals(data, baseline)) {
+                    assertArrayEquals(baseline, actual, () -> Arrays.toString(data));
+                }
+            }
+        }
+    }
+
+    @Test
+    void correctAcceptsIntactData() {
+        byte[] data = randomBytes(new SplittableRandom(5), FrameFormat.MAX_PAYLOAD);
+        byte[] actual = data.clone();
+        assertTrue(Fcs.correct(actual, 0, actual.length, Fcs.calculate(data)));
+        assertArrayEquals(data, actual);
+    }
+
+    private static byte[] randomBytes(SplittableRandom random, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) random.nextInt(256);
+        }
+        return data;
+    }
+
+    private static byte calculateFCS(byte[] data) {
+        int fcs = 0;
+        for (byte b : data) {
+            fcs ^= b;
+            for (int i = 0; i < 8; i++) {
+                if ((fcs & 0x80) != 0) {
+                    fcs = (fcs << 1) ^ POLYNOMIAL;
+                } else {
+                    fcs <<= 1;
+                }
+            }
+        }
+        return (byte) (fcs & 0x3F);
+    }
+
+    private static byte[] leftCycleShift(byte[] byteMessage) {
+        byte[] shiftByteMessage = new byte[byteMessage.length];
+        int highestBitOfFirstByte = (byteMessage[0] & 0x80) >> 7;
+        for (int i = 0; i < byteMessage.length; i++) {
+            shiftByteMessage[i] = (byte) ((byteMessage[i] << 1) & 0xFF);
+            if (i < byteMessage.length - 1) {
+                shiftByteMessage[i] |= (byte) ((byteMessage[i + 1] & 0x80) >> 7);
+            }
+        }
+        shiftByteMessage[shiftByteMessage.length - 1] |= (byte) highestBitOfFirstByte;
+        return shiftByteMessage;
+    }
+
+    // The one change: the old one shifted the signed byte, byteMessage[i] >> 1, which smeared ones into the
+    // top bit of every byte >= 0x80 on the way back
+    private static byte[] rightCycleShift(byte[] byteMessage) {
+        byte[] shiftByteMessage = new byte[byteMessage.length];
+        int lowestBitOfLastByte = byteMessage[byteMessage.length - 1] & 1;
+        for (int i = byteMessage.length - 1; i >= 0; i--) {
+            shiftByteMessage[i] = (byte) ((byteMessage[i] & 0xFF) >> 1);
+            if (i > 0) {
+                shiftByteMessage[i] |= (byte) ((byteMessage[i - 1] & 1) << 7);
+            }
+        }
+        shiftByteMessage[0] |= (byte) (lowestBitOfLastByte << 7);
+        return shiftByteMessage;
+    }
+
+    // On bytes rather than through a String, which garbled anything that was not ASCII
+    private static byte[] cyclicShiftCorrection(byte[] shiftMessage, byte crc) {
+        if (Integer.bitCount(crc) <= 1) {
+            shiftMessage[shiftMessage.length - 1] ^= crc;
+            return shiftMessage;
+        }
+        byte[] message = shiftMessage;
+        int countShifts = 0;
+        int sizeBits = shiftMessage.length * 8;
+        for (int i = 0; i < sizeBits; i++) {
+            countShifts++;
+            shiftMessage = leftCycleShift(shiftMessage);
+            crc = calculateFCS(shiftMessage);
+            if (Integer.bitCount(crc) <= 1) {
+                shiftMessage[shiftMessage.length - 1] ^= crc;
+                for (int j = 0; j < countShifts; j++) {
+                    shiftMessage = rightCycleShift(shiftMessage);
+                }
+                return shiftMessage;
+            }
+        }
+        return message;
+    }
+}
@@ -0,0 +1,76 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.SplittableRandom;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Function;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * A {@link FileSender} handing its stream straight to a {@link FileReceiver}, with a
+ * link in between that may damage it.
+ */
+class FileTransferTest {
+    private static final FileTransfer.Progress IGNORED = (bytes, total, elapsedNanos) -> { };
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void fileArrivesWhole() throws Exception {
+        for (int size : new int[] {0, 1, FileTransfer.CHUNK_SIZE, 3 * FileTransfer.CHUNK_SIZE + 17}) {
+            byte[] content = randomBytes(size);
+            Path in = Files.write(dir.resolve("in" + size), content);
+            Path out = dir.resolve("out" + size);
+            transfer(in, out, -1);
+            assertArrayEquals(content, Files.readAllBytes(out), "size " + size);
+        }
+    }
+
+    @Test
+    void damageFailsTheTransfer() throws Exception {
+        Path in = Files.write(dir.resolve("in"), randomBytes(2 * FileTransfer.CHUNK_SIZE));
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> transfer(in, dir.resolve("out"), FileTransfer.HEADER_LENGTH + 100));
+        assertTrue(e.getCause().getMessage().contains("damaged"), e.getCause().getMessage());
+    }
+
+    // Flips a bit at the given offset of the stream, unless it is negative
+    private static void transfer(Path in, Path out, long damageAt) throws Exception {
+        FileReceiver receiver = new FileReceiver(out, IGNORED);
+        long[] streamed = {0};
+        Function<ByteBuffer, CompletableFuture<Integer>> link = data -> {
+            byte[] bytes = new byte[data.remaining()];
+            data.get(bytes);
+            if (damageAt >= streamed[0] && damageAt < streamed[0] + bytes.length) {
+                bytes[(int) (damageAt - streamed[0])] ^= 0x10;
+            }
+            streamed[0] += bytes.length;
+            receiver.onFrame(0, 0, bytes, 0, bytes.length, (byte) 0);
+            return CompletableFuture.completedFuture(0);
+        };
+        assertEquals(0, new FileSender(in, link, IGNORED).start().get(5, TimeUnit.SECONDS));
+        assertEquals(FileTransfer.HEADER_LENGTH + Files.size(in) + FileTransfer.TRAILER_LENGTH, streamed[0]);
+        receiver.getResult().get(5, TimeUnit.SECONDS);
+    }
+
+    private static byte[] randomBytes(int length) {
+        byte[] data = new byte[length];
+        SplittableRandom random = new SplittableRandom(length);
+        for (int i = 0; i < length; i++) {
+            data[i] = (byte) random.nextInt(256);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,92 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.SplittableRandom;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Frames written by a {@link FrameEncoder} and fed to a {@link FrameDecoder} straight
+ * from memory, however the reads happen to cut them.
+ */
+class FrameDecoderTest {
+    private static final FrameFormat FORMAT = FrameFormat.variable(32);
+
+    @Test
+    void framesCutAnywhereAreContinuedOnTheNextFeed() {
+        SplittableRandom random = new SplittableRandom(3);
+        List<byte[]> sent = new ArrayList<>();
+        byte[] line = line(random, sent, 200);
+        for (int step : new int[] {1, 2, 7, 64, line.length}) {
+            List<Frame> received = new ArrayList<>();
+            FrameDecoder decoder = new FrameDecoder(FORMAT, 16); // Smaller than a frame, so the ring wraps as well
+            for (int offset = 0; offset < line.length; offset += step) {
+                decoder.feed(line, offset, Math.min(step, line.length - offset), received::add);
+            }
+            assertEquals(sent.size(), received.size(), "step " + step);
+            for (int i = 0; i < sent.size(); i++) {
+                assertArrayEquals(sent.get(i), received.get(i).getData(), "step " + step + ", frame " + i);
+            }
+        }
+    }
+
+    @Test
+    void frameCutShortByTheNextIsDropped() {
+        FrameEncoder encoder = new FrameEncoder(FORMAT);
+        byte[] lost = encoder.encode(new byte[] {1, 2, 3, 4}, 0, 4, 1, 2);
+        byte[] kept = encoder.encode(new byte[] {5, 6}, 0, 2, 1, 2);
+        List<Frame> received = new ArrayList<>();
+        FrameDecoder decoder = new FrameDecoder(FORMAT);
+        decoder.feed(lost, 0, lost.length - 3, received::add);
+        decoder.feed(kept, 0, kept.length, received::add);
+        assertEquals(1, received.size());
+        assertArrayEquals(new byte[] {5, 6}, received.get(0).getData());
+    }
+
+    @Test
+    void framesForOtherAddressesAreSkipped() {
+        FrameRouter router = new FrameRouter();
+        List<Integer> toFive = new ArrayList<>();
+        List<Integer> toBroadcast = new ArrayList<>();
+        router.route(5, (destination, source, buffer, offset, length, fcs) -> toFive.add(destination));
+        router.route(9, (destination, source, buffer, offset, length, fcs) -> toBroadcast.add(destination));
+        router.remove(9);
+        router.route(FrameFormat.BROADCAST, (destination, source, buffer, offset, length, fcs) -> toBroadcast.add(destination));
+        FrameDecoder decoder = new FrameDecoder(FORMAT);
+        decoder.setAcceptedAddresses(router.getAddresses());
+        FrameEncoder encoder = new FrameEncoder(FORMAT);
+        byte[] data = {1, 2, 3};
+        for (int destination : new int[] {5, 7, 9, FrameFormat.BROADCAST, 5, FrameFormat.MAX_ADDRESS}) {
+            byte[] frame = encoder.encode(data, 0, data.length, destination, 2);
+            decoder.feed(frame, 0, frame.length, router);
+        }
+        assertEquals(Arrays.asList(5, FrameFormat.BROADCAST, 5), toFive); // Broadcasts go to every route
+        assertEquals(Arrays.asList(FrameFormat.BROADCAST), toBroadcast);
+        assertEquals(3, decoder.getSkippedFrames());
+    }
+
+    // Frames of random data, which the framing can get back exactly, one after another as on the line
+    private static byte[] line(SplittableRandom random, List<byte[]> sent, int frames) {
+        FrameEncoder encoder = new FrameEncoder(FORMAT);
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        while (sent.size() < frames) {
+            byte[] data = new byte[random.nextInt(encoder.getDataLength() + 1)];
+            for (int j = 0; j < data.length; j++) {
+                data[j] = (byte) (random.nextBoolean() ? random.nextInt(4) : random.nextInt(256));
+            }
+            if (encoder.isAmbiguous(data, 0, data.length, 1, 2)) {
+                continue;
+            }
+            byte[] frame = encoder.encode(data, 0, data.length, 1, 2);
+            line.write(frame, 0, frame.length);
+            sent.add(data);
+        }
+        return line.toByteArray();
+    }
+}
@@ -0,0 +1,64 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Every data byte coded by {@link Hamming}, both as the first and the second codeword of
+ * a packed pair and as an odd last one.
+ */
+class HammingTest {
+
+    @Test
+    void intactCodewordsDecodeWithoutCorrections() {
+        for (int first = 0; first < 256; first++) {
+            for (int second = 0; second < 256; second++) {
+                byte[] data = {(byte) first, (byte) second};
+                byte[] coded = encode(data);
+                assertEquals(0, Hamming.decode(coded, 0, coded.length));
+                assertArrayEquals(data, Arrays.copyOf(coded, data.length));
+            }
+        }
+    }
+
+    @Test
+    void everySingleBitErrorInAPairIsCorrected() {
+        for (int first = 0; first < 256; first++) {
+            byte[] data = {(byte) first, (byte) (first * 7 + 1), (byte) ~first};
+            byte[] coded = encode(data);
+            // The last codeword has 4 bits of padding after it, which decoding never reads
+            for (int bit = 0; bit < 36; bit++) {
+                byte[] damaged = coded.clone();
+                damaged[bit / 8] ^= (byte) (0x80 >>> (bit % 8));
+                assertEquals(1, Hamming.decode(damaged, 0, damaged.length), "byte " + first + ", bit " + bit);
+                assertArrayEquals(data, Arrays.copyOf(damaged, data.length), "byte " + first + ", bit " + bit);
+            }
+        }
+    }
+
+    @Test
+    void oneErrorPerCodewordIsCorrectedInEach() {
+        byte[] data = new byte[21];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) (i * 37);
+        }
+        byte[] coded = encode(data);
+        for (int i = 0; i < data.length; i++) {
+            int bit = i * 12 + (i % 12); // A different bit of each codeword
+            coded[bit / 8] ^= (byte) (0x80 >>> (bit % 8));
+        }
+        assertEquals(data.length, Hamming.decode(coded, 0, coded.length));
+        assertArrayEquals(data, Arrays.copyOf(coded, data.length));
+    }
+
+    private static byte[] encode(byte[] data) {
+        byte[] coded = new byte[Hamming.encodedLength(data.length)];
+        assertEquals(coded.length, Hamming.encode(data, 0, data.length, coded, 0));
+        assertEquals(data.length, Hamming.decodedLength(coded.length));
+        return coded;
+    }
+}
@@ -0,0 +1,78 @@
+package org.example;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Records appended to a {@link ReceiveJournal} and read back by a {@link JournalReader}.
+ */
+class ReceiveJournalTest {
+    private static final int[] FLAGS = {
+            0,
+            ReceiveJournal.CORRECTED,
+            ReceiveJournal.CORRUPT,
+            ReceiveJournal.COMPRESSED,
+            ReceiveJournal.CORRECTED | ReceiveJournal.COMPRESSED,
+    };
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void recordsComeBackWithTheirFlags() throws Exception {
+        int count = 300; // Several small segments, and reopened half way
+        for (int half = 0; half < 2; half++) {
+            try (ReceiveJournal journal = ReceiveJournal.open(dir, 2048, 0, 10)) {
+                assertEquals(half * count / 2, journal.getNextSequence());
+                for (int i = half * count / 2; i < (half + 1) * count / 2; i++) {
+                    byte[] data = data(i);
+                    journal.append(i % 64, 3, FLAGS[i % FLAGS.length], data, 0, data.length);
+                }
+            }
+        }
+        List<JournalRecord> records = new JournalReader(dir).query(JournalReader.Query.ALL);
+        assertEquals(count, records.size());
+        for (int i = 0; i < count; i++) {
+            JournalRecord record = records.get(i);
+            int flags = FLAGS[i % FLAGS.length];
+            assertEquals(i, record.getSequence());
+            assertEquals(i % 64, record.getDestination());
+            assertEquals(3, record.getSource());
+            assertEquals(flags, record.getFlags(), "record " + i);
+            assertEquals((flags & ReceiveJournal.CORRECTED) != 0, record.isCorrected(), "record " + i);
+            assertEquals((flags & ReceiveJournal.CORRUPT) != 0, record.isCorrupt(), "record " + i);
+            assertArrayEquals(data(i), record.getData(), "record " + i);
+        }
+    }
+
+    @Test
+    void queryBySequenceSeeksIntoTheRange() throws Exception {
+        try (ReceiveJournal journal = ReceiveJournal.open(dir, 4096, 0, 10)) {
+            for (int i = 0; i < 500; i++) {
+                byte[] data = data(i);
+                journal.append(1, 2, FLAGS[i % FLAGS.length], data, 0, data.length);
+            }
+            journal.flush();
+            List<JournalRecord> records = new JournalReader(dir).query(JournalReader.Query.ALL.withSequences(250, 259));
+            assertEquals(10, records.size());
+            for (int i = 0; i < records.size(); i++) {
+                assertEquals(250 + i, records.get(i).getSequence());
+                assertEquals(FLAGS[(250 + i) % FLAGS.length], records.get(i).getFlags());
+            }
+        }
+    }
+
+    private static byte[] data(int i) {
+        byte[] data = new byte[i % 40];
+        for (int j = 0; j < data.length; j++) {
+            data[j] = (byte) (i * 31 + j);
+        }
+        return data;
+    }
+}
@@ -0,0 +1,146 @@
+package org.example;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+
+/**
+ * Frames written by a {@link FrameEncoder} into one end of a loopback and read by a
+ * {@link ReceiverSession} on the other, over a channel that does no damage unless a
+ * test says so.
+ */
+class ReceiverSessionTest {
+    private static int nextEndpoint = 1000; // Loopback pairs live as long as the process, so each test takes its own
+
+    private LoopbackTransport out;
+    private LoopbackTransport in;
+    private ReceiverSession session;
+
+    @AfterEach
+    void close() {
+        if (session != null) {
+            session.stop();
+            out.close();
+            in.close();
+            session = null;
+        }
+    }
+
+    @Test
+    void paddedDataComesBackWithoutThePadding() throws Exception {
+        for (FrameFormat format : formats()) {
+            open(format, new SimulatedChannel(1, 0, 0, 0, 1));
+            FrameEncoder encoder = new FrameEncoder(format);
+            for (String text : new String[] {"ab ", "0", "x@", "P", "a\0", "\0\0", ""}) {
+                byte[] data = text.getBytes(StandardCharsets.UTF_8);
+                if (data.length <= encoder.getDataLength()) {
+                    assertArrayEquals(data, roundTrip(encoder, data), format + ": \"" + text + "\"");
+                }
+            }
+            close();
+        }
+    }
+
+    @Test
+    void randomDataComesBackExactly() throws Exception {
+        SplittableRandom random = new SplittableRandom(7);
+        for (FrameFormat format : formats()) {
+            open(format, new SimulatedChannel(1, 0, 0, 0, 1));
+            FrameEncoder encoder = new FrameEncoder(format);
+            for (int i = 0; i < 5_000; i++) {
+                byte[] data = new byte[random.nextInt(encoder.getDataLength() + 1)];
+                for (int j = 0; j < data.length; j++) {
+                    data[j] = (byte) (random.nextBoolean() ? random.nextInt(4) : random.nextInt(256)); // Plenty of zeros
+                }
+                if (encoder.isAmbiguous(data, 0, data.length, 0, 3)) {
+                    continue;
+                }
+                assertArrayEquals(data, roundTrip(encoder, data), format + ": " + Arrays.toString(data));
+            }
+            close();
+        }
+    }
+
+    @Test
+    void singleBitErrorsInShortFramesAreCorrected() throws Exception {
+        FlipBit channel = new FlipBit();
+        open(FrameFormat.fixed(2), channel);
+        session.setDiscardCorrupt(true);
+        FrameEncoder encoder = new FrameEncoder(FrameFormat.fixed(2));
+        byte[] data = "ok".getBytes(StandardCharsets.US_ASCII);
+        LinkMetrics metrics = LinkMetrics.global();
+        long corrected = metrics.getCorrectionsSucceeded();
+        for (int bit = 0; bit < data.length * 8; bit++) {
+            channel.bit = bit;
+            assertArrayEquals(data, roundTrip(encoder, data), "bit " + bit);
+        }
+        assertEquals(data.length * 8, metrics.getCorrectionsSucceeded() - corrected);
+    }
+
+    private byte[] roundTrip(FrameEncoder encoder, byte[] data) throws IOException, InterruptedException {
+        byte[] frame = encoder.encode(data, 0, data.length, 0, 3);
+        OutputStream stream = out.getOutputStream();
+        stream.write(frame);
+        stream.flush();
+        Frame received = session.poll(5, TimeUnit.SECONDS);
+        assertNotNull(received, "frame lost");
+        assertEquals(3, received.getSource());
+        return received.getData();
+    }
+
+    private void open(FrameFormat format, ChannelModel channel) {
+        int endpoint = nextEndpoint;
+        nextEndpoint += 2;
+        out = LoopbackTransport.open(LoopbackTransport.PREFIX + endpoint, 0);
+        in = LoopbackTransport.open(LoopbackTransport.PREFIX + (endpoint + 1), 0);
+        session = new ReceiverSession(in, format, 16, () -> { });
+        session.setChannel(channel);
+        session.start();
+    }
+
+    // Flips one given bit of every frame received
+    private static final class FlipBit implements ChannelModel {
+        volatile int bit;
+
+        @Override
+        public boolean isBusy() {
+            return false;
+        }
+
+        @Override
+        public boolean isCollision() {
+            return false;
+        }
+
+        @Override
+        public int backoffSlots(int exponent) {
+            return 0;
+        }
+
+        @Override
+        public int corrupt(byte[] buffer, int offset, int length) {
+            buffer[offset + bit / 8] ^= (byte) (0x80 >>> (bit % 8));
+            return 1;
+        }
+    }
+
+    private static FrameFormat[] formats() {
+        return new FrameFormat[] {
+                FrameFormat.fixed(8),
+                FrameFormat.fixed(8).withFec(true),
+                FrameFormat.fixed(10).withFec(true), // Padded even when full
+                FrameFormat.variable(32),
+                FrameFormat.variable(32).withFec(true),
+        };
+    }
+}